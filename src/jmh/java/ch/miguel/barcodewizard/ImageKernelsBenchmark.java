@@ -0,0 +1,92 @@
+package ch.miguel.barcodewizard;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the scalar and Vector API kernels on an A4 page at 200 dpi.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+@State(Scope.Thread)
+public class ImageKernelsBenchmark {
+
+    @Param({ "scalar", "vector" })
+    private String backend;
+
+    @Param({ "1654x2339" })
+    private String size;
+
+    private ImageKernels kernels;
+    private int width;
+    private int height;
+    private int[] gray;
+    private int[] binary;
+    private int[] output;
+
+    @Setup
+    public void setUp() {
+        kernels = ImageKernelsFactory.create(backend);
+        if ("vector".equals(backend) && kernels.getClass() == ScalarImageKernels.class) {
+            throw new IllegalStateException("Vector API kernels unavailable");
+        }
+
+        String[] dimensions = size.split("x");
+        width = Integer.parseInt(dimensions[0]);
+        height = Integer.parseInt(dimensions[1]);
+
+        Random random = new Random(42);
+        gray = new int[width * height];
+        binary = new int[width * height];
+        for (int i = 0; i < gray.length; i++) {
+            gray[i] = random.nextInt(256);
+            binary[i] = gray[i] > 127 ? 255 : 0;
+        }
+        output = new int[width * height];
+    }
+
+    @Benchmark
+    public int[] gaussianBlur() {
+        kernels.gaussianBlur(gray, output, width, height);
+        return output;
+    }
+
+    @Benchmark
+    public int[] adaptiveThreshold() {
+        kernels.adaptiveThreshold(gray, output, width, height, 15, 10);
+        return output;
+    }
+
+    @Benchmark
+    public int[] sobelEuclidean() {
+        kernels.sobel(binary, output, width, height, GradientNorm.EUCLIDEAN);
+        return output;
+    }
+
+    @Benchmark
+    public int[] sobelL1() {
+        kernels.sobel(binary, output, width, height, GradientNorm.L1);
+        return output;
+    }
+
+    @Benchmark
+    public int[] sobelSquared() {
+        kernels.sobel(binary, output, width, height, GradientNorm.SQUARED);
+        return output;
+    }
+}
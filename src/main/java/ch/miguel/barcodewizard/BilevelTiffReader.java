@@ -0,0 +1,148 @@
+package ch.miguel.barcodewizard;
+
+import org.apache.commons.imaging.FormatCompliance;
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.common.bytesource.ByteSourceArray;
+import org.apache.commons.imaging.common.itu_t4.T4AndT6Compression;
+import org.apache.commons.imaging.formats.tiff.TiffContents;
+import org.apache.commons.imaging.formats.tiff.TiffDirectory;
+import org.apache.commons.imaging.formats.tiff.TiffElement;
+import org.apache.commons.imaging.formats.tiff.TiffField;
+import org.apache.commons.imaging.formats.tiff.TiffImageData;
+import org.apache.commons.imaging.formats.tiff.TiffReader;
+import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
+import org.apache.commons.imaging.formats.tiff.taginfos.TagInfo;
+
+import java.io.IOException;
+
+/**
+ * Reads CCITT-compressed bilevel TIFFs (Modified Huffman, Group 3, Group 4) straight into a
+ * {@link BinaryPlane}, skipping the RGB decode and grayscale conversion of the general path.
+ */
+public class BilevelTiffReader {
+
+    // T4Options bits
+    private static final int T4_2D_CODING = 1;
+    private static final int T4_FILL_BITS = 4;
+
+    /**
+     * Decodes the first image of a TIFF if it is a single-sample, 1-bit, strip-based CCITT image.
+     *
+     * @param tiffByteArray The TIFF image as a byte array.
+     * @return The decoded plane, or null if the image is not CCITT bilevel and needs the general path.
+     */
+    public BinaryPlane read(byte[] tiffByteArray) throws ImageReadException, IOException {
+        if (!isTiff(tiffByteArray)) {
+            return null;
+        }
+
+        // Check the tags first, so other images do not pay for loading their strips twice
+        TiffDirectory directory = readFirstDirectory(tiffByteArray, false);
+        if (directory == null || !isCcittBilevel(directory)) {
+            return null;
+        }
+        directory = readFirstDirectory(tiffByteArray, true);
+
+        int compression = intField(directory, TiffTagConstants.TIFF_TAG_COMPRESSION, 1);
+        int photometric = intField(directory, TiffTagConstants.TIFF_TAG_PHOTOMETRIC_INTERPRETATION,
+            TiffTagConstants.PHOTOMETRIC_INTERPRETATION_VALUE_WHITE_IS_ZERO);
+
+        TiffImageData imageData = directory.getTiffImageData();
+        if (!(imageData instanceof TiffImageData.Strips)) {
+            return null; // Tiled CCITT images are rare; leave them to the general path
+        }
+
+        int width = directory.getSingleFieldValue(TiffTagConstants.TIFF_TAG_IMAGE_WIDTH);
+        int height = directory.getSingleFieldValue(TiffTagConstants.TIFF_TAG_IMAGE_LENGTH);
+        int rowsPerStrip = intField(directory, TiffTagConstants.TIFF_TAG_ROWS_PER_STRIP, height);
+        int t4Options = intField(directory, TiffTagConstants.TIFF_TAG_T4_OPTIONS, 0);
+        boolean reversedFillOrder = intField(directory, TiffTagConstants.TIFF_TAG_FILL_ORDER,
+            TiffTagConstants.FILL_ORDER_VALUE_NORMAL) == TiffTagConstants.FILL_ORDER_VALUE_REVERSED;
+
+        BinaryPlane plane = new BinaryPlane(width, height);
+        byte[] bits = plane.getBits();
+        int rowStride = plane.getRowStride();
+
+        // Decode strip by strip directly into the packed plane
+        TiffElement.DataElement[] strips = ((TiffImageData.Strips) imageData).getImageData();
+        for (int strip = 0; strip < strips.length; strip++) {
+            int firstRow = strip * rowsPerStrip;
+            int rows = Math.min(rowsPerStrip, height - firstRow);
+            if (rows <= 0) {
+                break;
+            }
+
+            byte[] compressed = strips[strip].getData();
+            if (reversedFillOrder) {
+                compressed = reverseBits(compressed);
+            }
+
+            byte[] decoded = decompress(compressed, compression, t4Options, width, rows);
+            System.arraycopy(decoded, 0, bits, firstRow * rowStride, Math.min(decoded.length, rows * rowStride));
+        }
+
+        // The decoder emits 1 for black runs, which matches WhiteIsZero
+        if (photometric == TiffTagConstants.PHOTOMETRIC_INTERPRETATION_VALUE_BLACK_IS_ZERO) {
+            plane.invert();
+        }
+        return plane;
+    }
+
+    private boolean isTiff(byte[] data) {
+        return data.length >= 4
+            && ((data[0] == 'I' && data[1] == 'I' && data[2] == 42 && data[3] == 0)
+                || (data[0] == 'M' && data[1] == 'M' && data[2] == 0 && data[3] == 42));
+    }
+
+    private TiffDirectory readFirstDirectory(byte[] tiffByteArray, boolean readImageContents)
+            throws ImageReadException, IOException {
+        TiffContents contents = new TiffReader(true)
+            .readFirstDirectory(new ByteSourceArray(tiffByteArray), readImageContents, FormatCompliance.getDefault());
+        return contents.directories.isEmpty() ? null : contents.directories.get(0);
+    }
+
+    private boolean isCcittBilevel(TiffDirectory directory) throws ImageReadException {
+        int compression = intField(directory, TiffTagConstants.TIFF_TAG_COMPRESSION, 1);
+        if (compression != TiffTagConstants.COMPRESSION_VALUE_CCITT_1D
+            && compression != TiffTagConstants.COMPRESSION_VALUE_T4_GROUP_3_FAX
+            && compression != TiffTagConstants.COMPRESSION_VALUE_T6_GROUP_4_FAX) {
+            return false;
+        }
+        if (intField(directory, TiffTagConstants.TIFF_TAG_BITS_PER_SAMPLE, 1) != 1
+            || intField(directory, TiffTagConstants.TIFF_TAG_SAMPLES_PER_PIXEL, 1) != 1) {
+            return false;
+        }
+        int photometric = intField(directory, TiffTagConstants.TIFF_TAG_PHOTOMETRIC_INTERPRETATION,
+            TiffTagConstants.PHOTOMETRIC_INTERPRETATION_VALUE_WHITE_IS_ZERO);
+        return photometric == TiffTagConstants.PHOTOMETRIC_INTERPRETATION_VALUE_WHITE_IS_ZERO
+            || photometric == TiffTagConstants.PHOTOMETRIC_INTERPRETATION_VALUE_BLACK_IS_ZERO;
+    }
+
+    private byte[] decompress(byte[] compressed, int compression, int t4Options, int width, int rows)
+            throws ImageReadException {
+        if (compression == TiffTagConstants.COMPRESSION_VALUE_CCITT_1D) {
+            return T4AndT6Compression.decompressModifiedHuffman(compressed, width, rows);
+        }
+        if (compression == TiffTagConstants.COMPRESSION_VALUE_T4_GROUP_3_FAX) {
+            boolean hasFillBits = (t4Options & T4_FILL_BITS) != 0;
+            if ((t4Options & T4_2D_CODING) != 0) {
+                return T4AndT6Compression.decompressT4_2D(compressed, width, rows, hasFillBits);
+            }
+            return T4AndT6Compression.decompressT4_1D(compressed, width, rows, hasFillBits);
+        }
+        return T4AndT6Compression.decompressT6(compressed, width, rows);
+    }
+
+    private int intField(TiffDirectory directory, TagInfo tag, int defaultValue) throws ImageReadException {
+        TiffField field = directory.findField(tag);
+        return field != null ? field.getIntValue() : defaultValue;
+    }
+
+    private byte[] reverseBits(byte[] data) {
+        byte[] reversed = new byte[data.length];
+        for (int i = 0; i < data.length; i++) {
+            reversed[i] = (byte) (Integer.reverse(data[i] & 0xFF) >>> 24);
+        }
+        return reversed;
+    }
+}
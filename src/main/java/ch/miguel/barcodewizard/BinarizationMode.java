@@ -0,0 +1,13 @@
+package ch.miguel.barcodewizard;
+
+/**
+ * Which binarization the extractor runs before locating and decoding.
+ */
+public enum BinarizationMode {
+    /** Gaussian blur followed by adaptive (local mean) thresholding. */
+    ADAPTIVE,
+    /** A single Otsu threshold over the whole page, without blurring. */
+    GLOBAL,
+    /** Try the global threshold first and fall back to the adaptive path if nothing decodes. */
+    CASCADE
+}
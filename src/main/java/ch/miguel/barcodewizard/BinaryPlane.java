@@ -0,0 +1,89 @@
+package ch.miguel.barcodewizard;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+/**
+ * A bilevel image packed one bit per pixel, most significant bit first, each row starting
+ * on a byte boundary. A set bit is a black pixel.
+ */
+public class BinaryPlane {
+
+    // Palette for the packed bits: 0 = white, 1 = black
+    private static final IndexColorModel BLACK_IS_ONE = new IndexColorModel(1, 2,
+        new byte[] { (byte) 255, 0 }, new byte[] { (byte) 255, 0 }, new byte[] { (byte) 255, 0 });
+
+    private final int width;
+    private final int height;
+    private final int rowStride;
+    private final byte[] bits;
+
+    public BinaryPlane(int width, int height) {
+        this(width, height, new byte[((width + 7) / 8) * height]);
+    }
+
+    /**
+     * Wraps already packed rows.
+     *
+     * @param bits Packed rows of (width + 7) / 8 bytes each, 1 = black.
+     */
+    public BinaryPlane(int width, int height, byte[] bits) {
+        this.width = width;
+        this.height = height;
+        this.rowStride = (width + 7) / 8;
+        if (bits.length < rowStride * height) {
+            throw new IllegalArgumentException("Expected " + rowStride * height + " bytes, got " + bits.length);
+        }
+        this.bits = bits;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getRowStride() {
+        return rowStride;
+    }
+
+    /**
+     * Returns the packed rows; changes are visible in this plane and its image views.
+     */
+    public byte[] getBits() {
+        return bits;
+    }
+
+    public boolean isBlack(int x, int y) {
+        return (bits[y * rowStride + (x >> 3)] & (0x80 >> (x & 7))) != 0;
+    }
+
+    public void setBlack(int x, int y) {
+        bits[y * rowStride + (x >> 3)] |= (byte) (0x80 >> (x & 7));
+    }
+
+    /**
+     * Flips every pixel, e.g. for BlackIsZero input.
+     */
+    public void invert() {
+        for (int i = 0; i < rowStride * height; i++) {
+            bits[i] = (byte) ~bits[i];
+        }
+    }
+
+    /**
+     * Returns a 1-bit image backed by this plane, without copying the pixels.
+     */
+    public BufferedImage toImage() {
+        MultiPixelPackedSampleModel sampleModel = new MultiPixelPackedSampleModel(
+            DataBufferByte.TYPE_BYTE, width, height, 1, rowStride, 0);
+        WritableRaster raster = Raster.createWritableRaster(sampleModel, new DataBufferByte(bits, bits.length), null);
+        return new BufferedImage(BLACK_IS_ONE, raster, false, null);
+    }
+}
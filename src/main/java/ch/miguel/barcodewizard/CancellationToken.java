@@ -0,0 +1,93 @@
+package ch.miguel.barcodewizard;
+
+import java.time.Duration;
+
+/**
+ * Cooperative cancellation for a single extraction. The pipeline calls {@link #checkpoint(String)}
+ * between stages and periodically inside its long pixel loops; once the token is cancelled or its
+ * deadline has passed, the next check throws {@link ExtractionCancelledException}.
+ * A token is meant for one extraction at a time.
+ */
+public class CancellationToken {
+    private final long startNanos = System.nanoTime();
+    private final boolean hasDeadline;
+    private final long deadlineNanos;
+    private volatile boolean cancelled;
+    private volatile String stage = "start";
+
+    /**
+     * Creates a token without a deadline; subclasses in this package can hook into the checkpoints.
+     */
+    CancellationToken() {
+        this(false, 0);
+    }
+
+    private CancellationToken(boolean hasDeadline, long deadlineNanos) {
+        this.hasDeadline = hasDeadline;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Returns a token without a deadline that is only cancelled explicitly.
+     */
+    public static CancellationToken create() {
+        return new CancellationToken();
+    }
+
+    /**
+     * Returns a token that expires once the given time budget, counted from now, is used up.
+     */
+    public static CancellationToken withTimeout(Duration timeout) {
+        long start = System.nanoTime();
+        return new CancellationToken(true, start + timeout.toNanos());
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled || isTimedOut();
+    }
+
+    public boolean isTimedOut() {
+        return hasDeadline && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /**
+     * Checks for cancellation, then records that the pipeline moves on to the given stage.
+     * A cancellation therefore reports the stage that was running when the budget ran out.
+     *
+     * @param stage Short description of the stage about to run.
+     * @throws ExtractionCancelledException if the token is cancelled or timed out.
+     */
+    public void checkpoint(String stage) {
+        throwIfCancelled();
+        this.stage = stage;
+    }
+
+    /**
+     * Checks for cancellation without recording a new stage, for use inside loops.
+     *
+     * @throws ExtractionCancelledException if the token is cancelled or timed out.
+     */
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new ExtractionCancelledException(false, stage, getElapsedMillis());
+        }
+        if (isTimedOut()) {
+            throw new ExtractionCancelledException(true, stage, getElapsedMillis());
+        }
+    }
+
+    /**
+     * Returns the last stage recorded by {@link #checkpoint(String)}.
+     */
+    public String getStage() {
+        return stage;
+    }
+
+    public long getElapsedMillis() {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+}
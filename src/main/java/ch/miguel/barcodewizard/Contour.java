@@ -12,6 +12,10 @@ public class Contour {
         points.add(new Point(x, y));
     }
 
+    public List<Point> getPoints() {
+        return points;
+    }
+
     public Rectangle getBoundingBox() {
         int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
         int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
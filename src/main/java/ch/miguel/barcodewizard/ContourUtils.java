@@ -44,9 +44,23 @@ public class ContourUtils {
      * @return List of filtered contours with no containment.
      */
     public static List<Contour> filterContainedContours(List<Contour> contours) {
+        return filterContainedContours(contours, CancellationToken.create());
+    }
+
+    /**
+     * Filters contours by removing those contained within larger contours, checking the
+     * token once per contour since the comparison is quadratic.
+     *
+     * @param contours List of contours to filter.
+     * @param token Cancellation token for the current extraction.
+     * @return List of filtered contours with no containment.
+     * @throws ExtractionCancelledException if the token is cancelled or times out.
+     */
+    public static List<Contour> filterContainedContours(List<Contour> contours, CancellationToken token) {
         List<Contour> filteredContours = new ArrayList<>();
 
         for (Contour outer : contours) {
+            token.throwIfCancelled();
             boolean isContained = false;
 
             for (Contour inner : contours) {
@@ -3,18 +3,41 @@ package ch.miguel.barcodewizard;
 import org.apache.commons.imaging.ImageReadException;
 import org.apache.commons.imaging.Imaging;
 
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import javax.imageio.ImageIO;
 
-import java.awt.Color;
-import java.awt.Graphics2D;
 
 public class CustomDataMatrixExtractor {
 
+    // Pixels around the located bounding box included when the symbol is binarized on its own
+    private static final int SYMBOL_MARGIN = 2;
+
+    private final ImageKernels kernels = ImageKernels.getDefault();
+    private final BilevelTiffReader bilevelReader = new BilevelTiffReader();
+    private final BinarizationMode mode;
+    private final ExtractionStatistics statistics = new ExtractionStatistics();
+
+    public CustomDataMatrixExtractor() {
+        this(BinarizationMode.ADAPTIVE);
+    }
+
+    /**
+     * @param mode Binarization to run; {@link BinarizationMode#CASCADE} tries a cheap global
+     *             threshold first and only falls back to blur + adaptive thresholding on failure.
+     */
+    public CustomDataMatrixExtractor(BinarizationMode mode) {
+        this.mode = mode;
+    }
+
     /**
      * Reads a TIFF byte array and processes it to extract Data Matrix content.
      *
@@ -22,122 +45,291 @@ public class CustomDataMatrixExtractor {
      * @return The decoded Data Matrix content, or null if decoding fails.
      */
     public String extractDataMatrix(byte[] tiffByteArray) {
+        return extract(tiffByteArray).getData();
+    }
+
+    /**
+     * Reads a TIFF byte array and extracts Data Matrix content within a time budget.
+     *
+     * @param tiffByteArray The TIFF image as a byte array.
+     * @param timeout Time budget for the whole extraction.
+     * @return The decoded Data Matrix content, or null if decoding fails or times out.
+     */
+    public String extractDataMatrix(byte[] tiffByteArray, Duration timeout) {
+        return extract(tiffByteArray, CancellationToken.withTimeout(timeout)).getData();
+    }
+
+    /**
+     * Reads a TIFF byte array and extracts Data Matrix content, reporting which
+     * binarization tier succeeded.
+     *
+     * @param tiffByteArray The TIFF image as a byte array.
+     * @return The extraction result; never null.
+     */
+    public ExtractionResult extract(byte[] tiffByteArray) {
+        return extract(tiffByteArray, CancellationToken.create());
+    }
+
+    /**
+     * Reads a TIFF byte array and extracts Data Matrix content, stopping early when the token
+     * is cancelled or times out. In that case the result has status TIMED_OUT or CANCELLED
+     * and reports the stage that was running.
+     *
+     * @param tiffByteArray The TIFF image as a byte array.
+     * @param token Cancellation token checked between and inside the pipeline stages.
+     * @return The extraction result; never null.
+     */
+    public ExtractionResult extract(byte[] tiffByteArray, CancellationToken token) {
+        ExtractionResult result = ExtractionResult.notFound();
         try {
-            // Step 1: Decode TIFF image from byte array
-            BufferedImage image = Imaging.getBufferedImage(new ByteArrayInputStream(tiffByteArray));
-
-            // Step 2: Preprocess the image (grayscale, binarization, etc.)
-            BufferedImage processedImage = preprocessImage(image);
-
-            // Step 3: Locate the Data Matrix in the image
-            var locator = new DataMatrixLocator();
-            DataMatrixRegion region = locator.locateDataMatrix(processedImage);
-            
-            if (region == null) {
-                System.out.println("No Data Matrix found.");
-                return null;
+            // Step 1a: CCITT bilevel scans are already binary, so locate and decode them directly
+            token.checkpoint("read TIFF");
+            BinaryPlane plane = bilevelReader.read(tiffByteArray);
+            if (plane != null) {
+                BufferedImage binaryImage = plane.toImage();
+                saveImage(binaryImage, "bilevelImage.png");
+                // The locator works on the packed bits; the image is only a view for sampling
+                DataMatrixRegion region = new DataMatrixLocator().locateDataMatrix(plane, token);
+                result = decodeRegion(region, binaryImage, null, DecodeTier.BILEVEL, token);
+            } else {
+                // Step 1b: Decode TIFF image from byte array
+                BufferedImage image = Imaging.getBufferedImage(new ByteArrayInputStream(tiffByteArray));
+                result = runPipeline(image, token);
             }
-            region.setImage(processedImage);
-            
-            // Step 4: Decode the Data Matrix
-            DataMatrixDecoder decoder = new DataMatrixDecoder();
-            String data = decoder.decode(region);
-
-            return data;
 
+        } catch (ExtractionCancelledException e) {
+            result = ExtractionResult.interrupted(e);
         } catch (ImageReadException | IOException e) {
             System.err.println("Error reading the TIFF image: " + e.getMessage());
         } catch (Exception e) {
             System.err.println("Error processing the image: " + e.getMessage());
         }
-        return null;
+        statistics.record(result);
+        return result;
     }
 
-    private BufferedImage preprocessImage(BufferedImage image) {
-        // Step 1: Convert to grayscale
-        BufferedImage grayImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
-        Graphics2D g2d = grayImage.createGraphics();
-        g2d.drawImage(image, 0, 0, null);
-        g2d.dispose();
+    /**
+     * Extracts Data Matrix content from an already decoded image, reporting which
+     * binarization tier succeeded.
+     *
+     * @param image The page or frame to search.
+     * @return The extraction result; never null.
+     */
+    public ExtractionResult extract(BufferedImage image) {
+        return extract(image, CancellationToken.create());
+    }
 
-        // Step 2: Apply Gaussian blur for noise reduction
-        BufferedImage blurredImage = applyGaussianBlur(grayImage);
+    /**
+     * Extracts Data Matrix content from an already decoded image, stopping early when the
+     * token is cancelled or times out.
+     *
+     * @param image The page or frame to search.
+     * @param token Cancellation token checked between and inside the pipeline stages.
+     * @return The extraction result; never null.
+     */
+    public ExtractionResult extract(BufferedImage image, CancellationToken token) {
+        ExtractionResult result = search(image, token);
+        statistics.record(result);
+        return result;
+    }
 
-        // Step 3: Binarize the image using adaptive thresholding
-        BufferedImage binaryImage = binarizeImageAdaptive(blurredImage);
+    /**
+     * Like {@link #extract(BufferedImage, CancellationToken)}, but without recording the outcome
+     * in the statistics, for callers that combine several searches into one extraction.
+     */
+    ExtractionResult search(BufferedImage image, CancellationToken token) {
+        try {
+            return runPipeline(image, token);
+        } catch (ExtractionCancelledException e) {
+            return ExtractionResult.interrupted(e);
+        } catch (Exception e) {
+            System.err.println("Error processing the image: " + e.getMessage());
+            return ExtractionResult.notFound();
+        }
+    }
+
+    /**
+     * Runs {@link #extract(byte[], CancellationToken)} on the given executor. Cancelling the
+     * returned future cancels the extraction at its next checkpoint, so callers can race
+     * or abandon decodes without leaving a worker busy.
+     *
+     * @param tiffByteArray The TIFF image as a byte array.
+     * @param timeout Time budget for the whole extraction, counted from submission.
+     * @param executor Executor to run the extraction on.
+     * @return A future completing with the extraction result.
+     */
+    public CompletableFuture<ExtractionResult> extractAsync(byte[] tiffByteArray, Duration timeout, Executor executor) {
+        return extractAsync(tiffByteArray, CancellationToken.withTimeout(timeout), executor);
+    }
 
+    /**
+     * Runs {@link #extract(byte[], CancellationToken)} on the given executor. Cancelling the
+     * returned future also cancels the token.
+     *
+     * @param tiffByteArray The TIFF image as a byte array.
+     * @param token Cancellation token for the extraction.
+     * @param executor Executor to run the extraction on.
+     * @return A future completing with the extraction result.
+     */
+    public CompletableFuture<ExtractionResult> extractAsync(byte[] tiffByteArray, CancellationToken token,
+                                                           Executor executor) {
+        CompletableFuture<ExtractionResult> future =
+            CompletableFuture.supplyAsync(() -> extract(tiffByteArray, token), executor);
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                token.cancel();
+            }
+        });
+        return future;
+    }
+
+    private ExtractionResult runPipeline(BufferedImage image, CancellationToken token) {
+        ExtractionResult result = ExtractionResult.notFound();
+
+        // Step 2: Convert to grayscale
+        token.checkpoint("grayscale");
+        BufferedImage grayImage = convertToGrayscale(image);
         saveImage(grayImage, "grayImage.png");
-        saveImage(blurredImage, "blurredImage.png");
-        saveImage(binaryImage, "binaryImage.png");
 
+        // Step 3: Fast path, a single global threshold
+        if (mode != BinarizationMode.ADAPTIVE) {
+            token.checkpoint("global threshold");
+            result = locateAndDecode(binarizeImageGlobal(grayImage), null, DecodeTier.GLOBAL, token);
+        }
+
+        // Step 4: Slow path, blur and adaptive thresholding
+        if (!result.isSuccess() && mode != BinarizationMode.GLOBAL) {
+            token.checkpoint("blur");
+            BufferedImage blurredImage = applyGaussianBlur(grayImage);
+            token.checkpoint("adaptive threshold");
+            BufferedImage binaryImage = binarizeImageAdaptive(blurredImage);
+
+            saveImage(blurredImage, "blurredImage.png");
+            saveImage(binaryImage, "binaryImage.png");
+
+            result = locateAndDecode(binaryImage, blurredImage, DecodeTier.ADAPTIVE, token);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the cumulative decode counts per tier for this extractor.
+     */
+    public ExtractionStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Locates the symbol in binaryImage and decodes it as {@link #decodeRegion} does.
+     */
+    private ExtractionResult locateAndDecode(BufferedImage binaryImage, BufferedImage grayImage, DecodeTier tier,
+                                             CancellationToken token) {
+        // Locate the Data Matrix in the image
+        var locator = new DataMatrixLocator();
+        DataMatrixRegion region = locator.locateDataMatrix(binaryImage, token);
+        return decodeRegion(region, binaryImage, grayImage, tier, token);
+    }
+
+    /**
+     * @param region The located region, or null if none was found.
+     * @param grayImage If not null, the modules are sampled from the located area of this image,
+     *                  binarized with a single threshold, instead of from binaryImage.
+     */
+    private ExtractionResult decodeRegion(DataMatrixRegion region, BufferedImage binaryImage, BufferedImage grayImage,
+                                          DecodeTier tier, CancellationToken token) {
+        if (region == null) {
+            System.out.println("No Data Matrix found.");
+            return ExtractionResult.notFound();
+        }
+        region.setImage(binaryImage);
+
+        // Decode the Data Matrix
+        token.checkpoint("decode");
+        DataMatrixDecoder decoder = new DataMatrixDecoder();
+        String data = decoder.decode(grayImage != null ? binarizeSymbol(region, grayImage) : region);
+        if (data == null || data.isEmpty()) {
+            return ExtractionResult.notFound();
+        }
+
+        return new ExtractionResult(data, region, tier);
+    }
+
+    /**
+     * Binarizes the located symbol's area with one Otsu threshold. The adaptive threshold finds
+     * the symbol reliably, but it turns the inside of dark areas wider than its block white;
+     * sampling from it corrupts the data modules while the thin finder and timing patterns survive.
+     *
+     * @return The region in the coordinates of the binarized window, with that window as its image.
+     */
+    private DataMatrixRegion binarizeSymbol(DataMatrixRegion region, BufferedImage grayImage) {
+        // The corners can lie outside the contour's box, e.g. where a light corner module left no edge
+        Rectangle window = new Rectangle(region.getBoundingBox());
+        for (Point2D.Double corner : region.getCorners()) {
+            window.add(new Rectangle((int) Math.floor(corner.x), (int) Math.floor(corner.y), 1, 1));
+        }
+        window.grow(SYMBOL_MARGIN, SYMBOL_MARGIN);
+        window = window.intersection(new Rectangle(0, 0, grayImage.getWidth(), grayImage.getHeight()));
+
+        int[] gray = ImagePlanes.readGray(grayImage.getSubimage(window.x, window.y, window.width, window.height));
+        int[] binary = new int[gray.length];
+        kernels.threshold(gray, binary, kernels.otsuThreshold(gray));
+
+        DataMatrixRegion windowRegion = region.translate(-window.x, -window.y);
+        windowRegion.setImage(ImagePlanes.toBinaryImage(binary, window.width, window.height));
+        return windowRegion;
+    }
+
+    private BufferedImage convertToGrayscale(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            return image;
+        }
+        // Computed on the pixel arrays, so the pipeline needs no Graphics2D and runs headless
+        int[] luminance = ImagePlanes.readLuminance(image);
+        return ImagePlanes.toGrayImage(luminance, image.getWidth(), image.getHeight());
+    }
+
+    private BufferedImage binarizeImageGlobal(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] gray = ImagePlanes.readGray(image);
+        int[] binary = new int[width * height];
+
+        kernels.threshold(gray, binary, kernels.otsuThreshold(gray));
+
+        BufferedImage binaryImage = ImagePlanes.toBinaryImage(binary, width, height);
+        saveImage(binaryImage, "globalBinaryImage.png");
         return binaryImage;
     }
 
     private BufferedImage applyGaussianBlur(BufferedImage image) {
-        // Use a simple box blur or implement a Gaussian kernel
-        int[][] kernel = {
-            {1, 4, 6, 4, 1},
-            {4, 16, 24, 16, 4},
-            {6, 24, 36, 24, 6},
-            {4, 16, 24, 16, 4},
-            {1, 4, 6, 4, 1}
-        };
-        int kernelWeight = 256; // Sum of all kernel values
-
-        BufferedImage blurredImage = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
-
-        for (int x = 2; x < image.getWidth() - 2; x++) {
-            for (int y = 2; y < image.getHeight() - 2; y++) {
-                int sum = 0;
-
-                for (int i = -2; i <= 2; i++) {
-                    for (int j = -2; j <= 2; j++) {
-                        int pixel = new Color(image.getRGB(x + i, y + j)).getRed();
-                        sum += kernel[i + 2][j + 2] * pixel;
-                    }
-                }
-
-                int blurredValue = sum / kernelWeight;
-                Color blurredColor = new Color(blurredValue, blurredValue, blurredValue);
-                blurredImage.setRGB(x, y, blurredColor.getRGB());
-            }
-        }
-        return blurredImage;
+        // 5x5 binomial kernel, applied as two separable passes
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] gray = ImagePlanes.readGray(image);
+        int[] blurred = new int[width * height];
+
+        kernels.gaussianBlur(gray, blurred, width, height);
+
+        return ImagePlanes.toGrayImage(blurred, width, height);
     }
 
     private BufferedImage binarizeImageAdaptive(BufferedImage image) {
         int width = image.getWidth();
         int height = image.getHeight();
-        BufferedImage binaryImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+        int[] gray = ImagePlanes.readGray(image);
+        int[] binary = new int[width * height];
 
         int blockSize = 15; // Size of the neighborhood
         int c = 10; // Constant to subtract from mean
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                int mean = calculateLocalMean(image, x, y, blockSize);
-                int grayValue = new Color(image.getRGB(x, y)).getRed();
-                int binaryValue = grayValue > (mean - c) ? Color.WHITE.getRGB() : Color.BLACK.getRGB();
-                binaryImage.setRGB(x, y, binaryValue);
-            }
-        }
-        return binaryImage;
-    }
+        kernels.adaptiveThreshold(gray, binary, width, height, blockSize, c);
 
-    private int calculateLocalMean(BufferedImage image, int x, int y, int blockSize) {
-        int sum = 0, count = 0;
-        for (int i = -blockSize / 2; i <= blockSize / 2; i++) {
-            for (int j = -blockSize / 2; j <= blockSize / 2; j++) {
-                int nx = x + i, ny = y + j;
-                if (nx >= 0 && nx < image.getWidth() && ny >= 0 && ny < image.getHeight()) {
-                    sum += new Color(image.getRGB(nx, ny)).getRed();
-                    count++;
-                }
-            }
-        }
-        return count > 0 ? sum / count : 0;
+        return ImagePlanes.toBinaryImage(binary, width, height);
     }
 
     private void saveImage(BufferedImage image, String filename) {
+        if (!DebuggingUtils.isDebugImagesEnabled()) {
+            return;
+        }
         try {
             File output = new File(filename);
             ImageIO.write(image, "png", output);
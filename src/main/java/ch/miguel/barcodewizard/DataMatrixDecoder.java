@@ -1,7 +1,7 @@
 package ch.miguel.barcodewizard;
 
 import java.awt.Color;
-import java.awt.Rectangle;
+import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
@@ -9,27 +9,58 @@ import java.io.IOException;
 import javax.imageio.ImageIO;
 
 public class DataMatrixDecoder {
+    // Distance in pixels at which the timing pattern is sampled inside the top border
+    private static final double TIMING_INSET = 2.0;
+    // Minimum run, in half-pixel samples, for a colour change along the timing pattern to count
+    private static final int MIN_TIMING_RUN = 3;
+    // Share of the finder and timing modules that may be misread, e.g. on damaged prints
+    private static final double MAX_PATTERN_ERROR_RATIO = 0.05;
+
     public String decode(DataMatrixRegion region) {
         try {
-            // Step 1: Extract pixel data
-            Rectangle boundingBox = region.getBoundingBox();
-
-            // Step 2: Crop the image to the region
-            BufferedImage dataMatrixImage = region.getImage().getSubimage(
-                boundingBox.x + 1, boundingBox.y + 1, boundingBox.width - 1, boundingBox.height - 1
-            );
-            saveImage(dataMatrixImage, "dataMatrixImage.png");
+            // Step 1: Map symbol space onto the located corners
+            PerspectiveTransform transform = region.getTransform();
+            BufferedImage image = region.getImage();
+
+            // Step 2: Count the modules along the top timing pattern
+            int gridSize = gridSize(image, region.getCorners(), transform);
+            if (gridSize < 2) {
+                System.err.println("Error decoding Data Matrix: no timing pattern found");
+                return null;
+            }
 
+            // Step 3: Sample the module centres through the transform. Where the estimated top edge
+            // runs along module corners the count can be off by one, so the neighbouring sizes are
+            // sampled too and the grid whose finder and timing patterns match best is kept
             DataMatrixRedrawer redrawer = new DataMatrixRedrawer();
-            BufferedImage cleanedImage = redrawer.redrawDataMatrix(dataMatrixImage, gridSize(dataMatrixImage));
+            boolean[][] grid = null;
+            int patternErrors = 0;
+            for (int size : new int[] { gridSize, gridSize - 1, gridSize + 1 }) {
+                if (size < 2) {
+                    continue;
+                }
+                boolean[][] candidate = redrawer.sampleGrid(image, transform, size);
+                int errors = patternErrors(candidate);
+                // Compare the share of misread modules, errors / (4 * size)
+                if (grid == null || errors * grid.length < patternErrors * size) {
+                    grid = candidate;
+                    patternErrors = errors;
+                }
+            }
 
-            // Save the new image for verification
-            saveImage(cleanedImage, "perfectDataMatrix.png");
+            // Save the redrawn symbol for verification
+            if (DebuggingUtils.isDebugImagesEnabled()) {
+                saveImage(redrawer.redrawDataMatrix(grid, 10), "perfectDataMatrix.png");
+            }
 
-            // Step 2: Analyze the grid
-            boolean[][] grid = analyzeGrid(cleanedImage);
+            // Step 4: Reject grids whose finder and timing patterns did not sample back,
+            // e.g. from a wrong module count or misplaced corners
+            if (patternErrors > MAX_PATTERN_ERROR_RATIO * 4 * grid.length) {
+                System.err.println("Error decoding Data Matrix: " + patternErrors + " finder and timing modules do not match");
+                return null;
+            }
 
-            // Step 3: Decode binary data
+            // Step 5: Decode binary data
             String decodedData = decodeGrid(grid);
 
             return decodedData;
@@ -41,53 +72,34 @@ public class DataMatrixDecoder {
         return null;
     }
 
-    private boolean[][] analyzeGrid(BufferedImage image) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-
-        // Estimate grid size based on image dimensions
-        int gridSize = gridSize(image);
-
-        // Create a grid to store module states (true = black, false = white)
-        boolean[][] grid = new boolean[gridSize][gridSize];
-
-        // Analyze the image to populate the grid
-        int cellWidth = width / gridSize;
-        int cellHeight = height / gridSize;
-
-        for (int i = 0; i < gridSize; i++) {
-            for (int j = 0; j < gridSize; j++) {
-                int startX = i * cellWidth;
-                int startY = j * cellHeight;
-                int endX = startX + cellWidth;
-                int endY = startY + cellHeight;
-
-                // Determine if the cell is black or white
-                grid[i][j] = isCellBlack(image, startX, startY, endX, endY);
+    /**
+     * Counts the modules of the finder L (left column, bottom row) and of the alternating
+     * timing pattern (top row, right column) that do not match, out of 4 * size.
+     */
+    static int patternErrors(boolean[][] grid) {
+        int size = grid.length;
+        int errors = 0;
+        for (int i = 0; i < size; i++) {
+            if (!grid[0][i]) {
+                errors++;
             }
-        }
-        return grid;
-    }
-
-    private boolean isCellBlack(BufferedImage image, int startX, int startY, int endX, int endY) {
-        int blackPixelCount = 0;
-        int totalPixelCount = 0;
-
-        for (int x = startX; x < endX; x++) {
-            for (int y = startY; y < endY; y++) {
-                int grayValue = new Color(image.getRGB(x, y)).getRed();
-                if (grayValue < 128) { // Black pixel
-                    blackPixelCount++;
-                }
-                totalPixelCount++;
+            if (!grid[i][size - 1]) {
+                errors++;
+            }
+            if (grid[i][0] != (i % 2 == 0)) {
+                errors++;
+            }
+            if (grid[size - 1][i] != (i % 2 == 1)) {
+                errors++;
             }
         }
-
-        // A cell is considered black if more than half of its pixels are black
-        return blackPixelCount > (totalPixelCount / 2);
+        return errors;
     }
 
-    private String decodeGrid(boolean[][] grid) {
+    /**
+     * Reads the content of a module grid indexed as grid[x][y].
+     */
+    String decodeGrid(boolean[][] grid) {
         // Extract binary payload
         String binaryData = extractDataPayload(grid);
 
@@ -135,24 +147,62 @@ public class DataMatrixDecoder {
         return binaryData.toString();
     }
 
-    private int gridSize(BufferedImage image) {
-        int steps = image.getWidth();
-        int size = 0;
+    /**
+     * Counts the alternating modules of the timing pattern along the top side of the symbol.
+     */
+    private int gridSize(BufferedImage image, Point2D.Double[] corners, PerspectiveTransform transform) {
+        double sideWidth = corners[0].distance(corners[1]);
+        double sideHeight = corners[0].distance(corners[3]);
+        if (sideWidth < 1 || sideHeight < 1) {
+            return 0;
+        }
 
-        Color lastColor = new Color(Color.green.getRGB());
+        // First estimate just inside the top edge, then recount along the centre of the timing row,
+        // where the staircase edges of a rotated symbol cannot add spurious transitions
+        int size = countTimingModules(image, transform, TIMING_INSET / sideHeight, sideWidth);
+        if (size < 2) {
+            return size;
+        }
+        return countTimingModules(image, transform, 0.5 / size, sideWidth);
+    }
 
+    private int countTimingModules(BufferedImage image, PerspectiveTransform transform, double v, double sideWidth) {
+        double start = TIMING_INSET / sideWidth;
+        int steps = (int) (sideWidth * 2); // Half-pixel resolution
+        int size = 0;
+        boolean currentBlack = false;
+        int pending = 0;
+
+        for (int i = 0; i <= steps; i++) {
+            double u = start + (1.0 - start) * i / steps;
+            Point2D.Double point = transform.transform(u, v);
+            int x = (int) Math.floor(point.x);
+            int y = (int) Math.floor(point.y);
+            if (x < 0 || x >= image.getWidth() || y < 0 || y >= image.getHeight()) {
+                continue;
+            }
 
-        for (int i = 0; i < steps; i++) {
-            if (lastColor.getRGB() != image.getRGB(i, 5)) {
+            boolean black = new Color(image.getRGB(x, y)).getRed() < 128;
+            if (size == 0) {
+                currentBlack = black;
+                size = 1;
+            } else if (black == currentBlack) {
+                pending = 0;
+            } else if (++pending >= MIN_TIMING_RUN) {
+                // Only count a new module once the colour change persists
+                currentBlack = black;
                 size++;
+                pending = 0;
             }
-            lastColor = new Color(image.getRGB(i, 5));
         }
 
-        return size - 1;
+        return size;
     }
 
     private void saveImage(BufferedImage image, String filename) {
+        if (!DebuggingUtils.isDebugImagesEnabled()) {
+            return;
+        }
         try {
             File output = new File(filename);
             ImageIO.write(image, "png", output);
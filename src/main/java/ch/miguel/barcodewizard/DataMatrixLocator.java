@@ -3,10 +3,9 @@ package ch.miguel.barcodewizard;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.awt.Color;
-import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.Point;
+import java.awt.geom.Point2D;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -14,36 +13,115 @@ import javax.imageio.ImageIO;
 
 public class DataMatrixLocator {
 
+    // Gray level below which a pixel of a binarized image counts as dark
+    private static final int DARK_THRESHOLD = 50;
+    // Distance in pixels at which the finder pattern is sampled inside the symbol border
+    private static final int FINDER_INSET = 2;
+    private static final double SOLID_BORDER_RATIO = 0.9;
+    private static final double BROKEN_BORDER_MIN_RATIO = 0.2;
+    private static final double BROKEN_BORDER_MAX_RATIO = 0.8;
+
+    // Distance in pixels from a fitted edge line within which contour points support it
+    private static final double EDGE_TOLERANCE = 1.5;
+    // Fraction of an edge's length that must support its fitted line, about half the dark timing modules
+    private static final double MIN_EDGE_SUPPORT_RATIO = 0.25;
+    // How far, in symbol units, the top and right edges may deviate from the parallelogram
+    private static final double MAX_EDGE_DEVIATION = 0.35;
+    // Fraction of the symbol side by which the fitted top-right corner must move to be trusted
+    // over the parallelogram, which is already exact for an affine view of the symbol
+    private static final double MIN_CORNER_SHIFT_RATIO = 0.07;
+    // Distance in pixels from the start corner within which a fitted edge line must pass
+    private static final double MAX_EDGE_CORNER_DISTANCE = 3;
+    // Step in pixels between the points that candidate edge lines are drawn through
+    private static final int EDGE_CANDIDATE_STRIDE = 2;
+
+    // Number of flood fill steps between cancellation checks
+    private static final int CANCELLATION_CHECK_INTERVAL = 4096;
+
+    private final ImageKernels kernels = ImageKernels.getDefault();
+
     public DataMatrixRegion locateDataMatrix(BufferedImage image) {
-        try {
-            // Step 3: Detect edges
-            BufferedImage edges = detectEdges(image);
+        return locateDataMatrix(image, CancellationToken.create());
+    }
+
+    /**
+     * Locates a Data Matrix, checking the token between steps and inside the contour search.
+     *
+     * @param image The binarized image.
+     * @param token Cancellation token for the current extraction.
+     * @return The located region, or null if no Data Matrix was found.
+     * @throws ExtractionCancelledException if the token is cancelled or times out.
+     */
+    public DataMatrixRegion locateDataMatrix(BufferedImage image, CancellationToken token) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = ImagePlanes.readGray(image);
 
+        BinaryPlane dark = new BinaryPlane(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (pixels[y * width + x] < DARK_THRESHOLD) {
+                    dark.setBlack(x, y);
+                }
+            }
+        }
+
+        // Step 3: Detect edges
+        token.checkpoint("edge detection");
+        return locate(dark, detectEdges(pixels, width, height), token);
+    }
+
+    /**
+     * Locates a Data Matrix in a bilevel image, working on its packed bits throughout instead
+     * of expanding them to one int per pixel.
+     *
+     * @param plane The bilevel image.
+     * @param token Cancellation token for the current extraction.
+     * @return The located region, or null if no Data Matrix was found.
+     * @throws ExtractionCancelledException if the token is cancelled or times out.
+     */
+    public DataMatrixRegion locateDataMatrix(BinaryPlane plane, CancellationToken token) {
+        // Step 3: Detect edges
+        token.checkpoint("edge detection");
+        return locate(plane, detectEdges(plane), token);
+    }
+
+    private DataMatrixRegion locate(BinaryPlane dark, BinaryPlane edges, CancellationToken token) {
+        try {
             // Step 4: Find contours (potential regions)
-            List<Contour> contours = findContours(edges);
+            token.checkpoint("contour search");
+            List<Contour> contours = findContours(edges, token);
 
+            token.checkpoint("contour filtering");
             List<Contour> filteredContours = ContourUtils.filterWrongSizedContours(contours);
-            filteredContours = ContourUtils.filterContainedContours(filteredContours);
+            filteredContours = ContourUtils.filterContainedContours(filteredContours, token);
 
             contours = filteredContours;
 
-            List<Rectangle> boundingBoxes = new ArrayList<>();
-            for (Contour contour : contours) {
-                boundingBoxes.add(contour.getBoundingBox());
-            }
+            if (DebuggingUtils.isDebugImagesEnabled()) {
+                List<Rectangle> boundingBoxes = new ArrayList<>();
+                for (Contour contour : contours) {
+                    boundingBoxes.add(contour.getBoundingBox());
+                }
 
-            BufferedImage debugImage = DebuggingUtils.drawBoundingBoxes(image, boundingBoxes);
+                BufferedImage debugImage = DebuggingUtils.drawBoundingBoxes(dark.toImage(), boundingBoxes);
 
-            saveImage(debugImage, "debugImage.png");
+                saveImage(debugImage, "debugImage.png");
+            }
 
             // Step 5: Validate contours to locate Data Matrix
+            token.checkpoint("finder pattern validation");
             for (Contour contour : contours) {
-                if (isValidDataMatrix(image, contour)) {
-                    // Extract and return the region
-                    return extractRegion(contour);
+                token.throwIfCancelled();
+                Point2D.Double[] corners = locateSymbolCorners(dark, contour);
+                if (corners != null) {
+                    // Extract and return the oriented region
+                    return new DataMatrixRegion(contour.getBoundingBox(), corners);
                 }
             }
 
+            } catch (ExtractionCancelledException e) {
+                throw e;
             } catch (Exception e) {
                 System.err.println("Error locating Data Matrix: " + e.getMessage());
                 e.printStackTrace();
@@ -51,74 +129,76 @@ public class DataMatrixLocator {
         return null; // No Data Matrix found
     }
 
-    private BufferedImage convertToGrayscale(BufferedImage image) {
-        BufferedImage grayImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
-        Graphics2D g2d = grayImage.createGraphics();
-        g2d.drawImage(image, 0, 0, null);
-        g2d.dispose();
-        return grayImage;
-    }
+    private BinaryPlane detectEdges(int[] pixels, int width, int height) {
+        int[] edges = new int[width * height];
 
-    private BufferedImage binarizeImage(BufferedImage image) {
-        BufferedImage binaryImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_BINARY);
-        for (int x = 0; x < image.getWidth(); x++) {
-            for (int y = 0; y < image.getHeight(); y++) {
-                int gray = new Color(image.getRGB(x, y)).getRed();
-                int binaryColor = gray < 128 ? 0 : 255;
-                binaryImage.setRGB(x, y, new Color(binaryColor, binaryColor, binaryColor).getRGB());
-            }
+        // Apply Sobel filter; only non-zero edge pixels matter, so skip the square root
+        kernels.sobel(pixels, edges, width, height, GradientNorm.L1);
+
+        if (DebuggingUtils.isDebugImagesEnabled()) {
+            saveImage(ImagePlanes.toGrayImage(edges, width, height), "edgeImage.png");
         }
-        return binaryImage;
-    }
 
-    private BufferedImage detectEdges(BufferedImage binaryImage) {
-        int width = binaryImage.getWidth();
-        int height = binaryImage.getHeight();
-        BufferedImage edgeImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
-
-        // Sobel kernels
-        int[][] sobelX = {
-            {-1, 0, 1},
-            {-2, 0, 2},
-            {-1, 0, 1}
-        };
-
-        int[][] sobelY = {
-            {-1, -2, -1},
-            { 0,  0,  0},
-            { 1,  2,  1}
-        };
-
-        // Apply Sobel filter
-        for (int x = 1; x < width - 1; x++) {
-            for (int y = 1; y < height - 1; y++) {
-                int gx = 0;
-                int gy = 0;
-
-                // Convolve the Sobel kernels
-                for (int i = -1; i <= 1; i++) {
-                    for (int j = -1; j <= 1; j++) {
-                        int pixel = new Color(binaryImage.getRGB(x + i, y + j)).getRed();
-                        gx += sobelX[i + 1][j + 1] * pixel;
-                        gy += sobelY[i + 1][j + 1] * pixel;
-                    }
+        BinaryPlane edgePlane = new BinaryPlane(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (edges[y * width + x] > 0) {
+                    edgePlane.setBlack(x, y);
                 }
+            }
+        }
+        return edgePlane;
+    }
 
-                // Compute gradient magnitude
-                int magnitude = (int) Math.min(255, Math.sqrt(gx * gx + gy * gy));
-
-                // Set the edge intensity
-                Color edgeColor = new Color(magnitude, magnitude, magnitude);
-                edgeImage.setRGB(x, y, edgeColor.getRGB());
+    /**
+     * Marks the pixels whose 3x3 neighbourhood holds both black and white, eight pixels per
+     * byte operation. Like the Sobel filter of the gray path, it leaves the one-pixel border
+     * clear; unlike it, it does not miss the centre of symmetric patterns such as lone pixels.
+     */
+    private BinaryPlane detectEdges(BinaryPlane plane) {
+        int width = plane.getWidth();
+        int height = plane.getHeight();
+        int rowStride = plane.getRowStride();
+        byte[] bits = plane.getBits();
+
+        // Per row, whether any (dilated) or every (eroded) pixel of each horizontal triple is black
+        byte[] dilated = new byte[rowStride * height];
+        byte[] eroded = new byte[rowStride * height];
+        for (int y = 0; y < height; y++) {
+            int row = y * rowStride;
+            for (int i = 0; i < rowStride; i++) {
+                int centre = bits[row + i] & 0xFF;
+                int left = (centre >>> 1) | (i > 0 ? (bits[row + i - 1] & 1) << 7 : 0);
+                int right = ((centre << 1) | (i + 1 < rowStride ? (bits[row + i + 1] & 0xFF) >>> 7 : 0)) & 0xFF;
+                dilated[row + i] = (byte) (left | centre | right);
+                eroded[row + i] = (byte) (left & centre & right);
             }
         }
 
-        saveImage(edgeImage, "edgeImage.png");
+        BinaryPlane edges = new BinaryPlane(width, height);
+        byte[] edgeBits = edges.getBits();
+        for (int y = 1; y < height - 1; y++) {
+            int above = (y - 1) * rowStride;
+            int row = y * rowStride;
+            int below = (y + 1) * rowStride;
+            for (int i = 0; i < rowStride; i++) {
+                int any = dilated[above + i] | dilated[row + i] | dilated[below + i];
+                int all = eroded[above + i] & eroded[row + i] & eroded[below + i];
+                edgeBits[row + i] = (byte) (any & ~all);
+            }
+            // Clear the left and right border, and the padding after the last pixel
+            edgeBits[row] &= 0x7F;
+            int last = width - 1;
+            edgeBits[row + (last >> 3)] &= (byte) (0xFF00 >>> (last & 7));
+        }
 
-        return edgeImage;
+        if (DebuggingUtils.isDebugImagesEnabled()) {
+            saveImage(edges.toImage(), "edgeImage.png");
+        }
+        return edges;
     }
 
-    private List<Contour> findContours(BufferedImage edges) {
+    private List<Contour> findContours(BinaryPlane edges, CancellationToken token) {
         int width = edges.getWidth();
         int height = edges.getHeight();
 
@@ -127,11 +207,12 @@ public class DataMatrixLocator {
         List<Contour> contours = new ArrayList<>();
 
         for (int x = 0; x < width; x++) {
+            token.throwIfCancelled();
             for (int y = 0; y < height; y++) {
-                if (!visited[x][y] && isEdgePixel(edges, x, y)) {
+                if (!visited[x][y] && edges.isBlack(x, y)) {
                     // Start a flood fill for this new contour
                     Contour contour = new Contour();
-                    floodFill(edges, x, y, visited, contour);
+                    floodFill(edges, x, y, visited, contour, token);
                     if (isValidContour(contour)) {
                         contours.add(contour);
                     }
@@ -141,24 +222,24 @@ public class DataMatrixLocator {
         return contours;
     }
 
-       private boolean isEdgePixel(BufferedImage image, int x, int y) {
-        // Check if a pixel is white (edge pixel in a binary image)
-        int color = new Color(image.getRGB(x, y)).getRed();
-        return color > 0; // Non-zero indicates an edge in a binary image
-    }
-
-    private void floodFill(BufferedImage image, int x, int y, boolean[][] visited, Contour contour) {
-        int width = image.getWidth();
-        int height = image.getHeight();
+    private void floodFill(BinaryPlane edges, int x, int y, boolean[][] visited, Contour contour,
+                           CancellationToken token) {
+        int width = edges.getWidth();
+        int height = edges.getHeight();
         List<Point> stack = new ArrayList<>();
         stack.add(new Point(x, y));
 
+        int iterations = 0;
         while (!stack.isEmpty()) {
+            // A single fill can cover most of a noisy page, so check for cancellation periodically
+            if (++iterations % CANCELLATION_CHECK_INTERVAL == 0) {
+                token.throwIfCancelled();
+            }
             Point point = stack.remove(stack.size() - 1);
             int px = point.x;
             int py = point.y;
 
-            if (px < 0 || px >= width || py < 0 || py >= height || visited[px][py] || !isEdgePixel(image, px, py)) {
+            if (px < 0 || px >= width || py < 0 || py >= height || visited[px][py] || !edges.isBlack(px, py)) {
                 continue;
             }
 
@@ -181,104 +262,354 @@ public class DataMatrixLocator {
         return area > 50; // Minimum area threshold
     }
 
-    private boolean isValidDataMatrix(BufferedImage image, Contour contour) {
+    /**
+     * Validates a contour and estimates the oriented corners of the symbol it outlines.
+     *
+     * @param dark The dark pixels of the image.
+     * @param contour The candidate contour.
+     * @return Corners ordered top-left, top-right, bottom-right, bottom-left in symbol
+     *         orientation, or null if the contour is not a valid Data Matrix.
+     */
+    private Point2D.Double[] locateSymbolCorners(BinaryPlane dark, Contour contour) {
         Rectangle boundingBox = contour.getBoundingBox();
-        int width = boundingBox.width;
-        int height = boundingBox.height;
 
-        // Validate the aspect ratio (close to 1:1 for square Data Matrix)
-        double aspectRatio = (double) width / height;
-        if (aspectRatio < 0.8 || aspectRatio > 1.2) {
-            return false; // Not a valid square or nearly square Data Matrix
+        // Minimum size threshold (to filter out noise)
+        if (boundingBox.width < 10 || boundingBox.height < 10) {
+            return null; // Too small to be a Data Matrix
         }
 
-        // Minimum size threshold (to filter out noise)
-        if (width < 10 || height < 10) {
-            return false; // Too small to be a Data Matrix
+        Point2D.Double[] quad = estimateQuadrilateral(contour);
+        if (quad == null) {
+            return null;
         }
 
-        // Check if it has the L-shaped finder pattern
-        if (!hasFinderPattern(image, contour)) {
-            return false; // Does not have the required finder pattern
+        // Validate the aspect ratio on the quadrilateral sides, so rotation does not matter
+        double width = (quad[0].distance(quad[1]) + quad[2].distance(quad[3])) / 2;
+        double height = (quad[1].distance(quad[2]) + quad[3].distance(quad[0])) / 2;
+        if (width < 10 || height < 10) {
+            return null;
+        }
+        double aspectRatio = width / height;
+        if (aspectRatio < 0.75 || aspectRatio > 1.33) {
+            return null; // Not a square Data Matrix, even allowing for perspective
         }
 
-        // Additional validation criteria can be added here
-        return true; // The contour is a valid Data Matrix
+        // Check for the L-shaped finder pattern and rotate the corners accordingly
+        return orientByFinderPattern(dark, contour, quad);
     }
 
-    private boolean hasFinderPattern(BufferedImage image, Contour contour) {
-        Rectangle boundingBox = contour.getBoundingBox();
-        BufferedImage region = extractRegion(image, boundingBox);
+    /**
+     * Estimates the four outer corners of a contour, independent of its rotation.
+     * The corners are returned in clockwise order (in image coordinates).
+     */
+    private Point2D.Double[] estimateQuadrilateral(Contour contour) {
+        List<Point> points = contour.getPoints();
+        if (points.size() < 4) {
+            return null;
+        }
 
-        int width = region.getWidth();
-        int height = region.getHeight();
+        double cx = 0, cy = 0;
+        for (Point point : points) {
+            cx += point.x;
+            cy += point.y;
+        }
+        cx /= points.size();
+        cy /= points.size();
+
+        // First corner: the point farthest from the centroid
+        Point first = points.get(0);
+        double best = -1;
+        for (Point point : points) {
+            double d = point.distanceSq(cx, cy);
+            if (d > best) {
+                best = d;
+                first = point;
+            }
+        }
 
-        // Check for the solid black border on the left and bottom sides
-        boolean hasLeftBorder = checkSolidBorder(region, 5, 5, 5, height - 5);
-        boolean hasBottomBorder = checkSolidBorder(region, 5, height - 5, width - 5, height - 5);
+        // Opposite corner: the point farthest from the first one
+        Point opposite = first;
+        best = -1;
+        for (Point point : points) {
+            double d = point.distanceSq(first);
+            if (d > best) {
+                best = d;
+                opposite = point;
+            }
+        }
 
-        // Check for the broken border on the top and right sides
-        boolean hasTopBrokenBorder = checkBrokenBorder(region, 5, 5, width - 5, 5);
-        boolean hasRightBrokenBorder = checkBrokenBorder(region, width - 5, 5, width - 5, height - 5);
+        // Remaining corners: the points farthest from the diagonal on either side
+        Point left = null, right = null;
+        double maxLeft = 0, maxRight = 0;
+        double dx = opposite.x - first.x;
+        double dy = opposite.y - first.y;
+        for (Point point : points) {
+            double side = dx * (point.y - first.y) - dy * (point.x - first.x);
+            if (side > maxLeft) {
+                maxLeft = side;
+                left = point;
+            } else if (-side > maxRight) {
+                maxRight = -side;
+                right = point;
+            }
+        }
+        if (left == null || right == null) {
+            return null; // Degenerate (line-like) contour
+        }
 
-        return hasLeftBorder && hasBottomBorder && hasTopBrokenBorder && hasRightBrokenBorder;
+        // In image coordinates (y down) a positive cross product lies clockwise of the diagonal
+        Point[] ordered = { first, right, opposite, left };
+
+        // The edge contour lies just outside the symbol, so pull the corners in slightly
+        Point2D.Double[] quad = new Point2D.Double[4];
+        for (int i = 0; i < 4; i++) {
+            double vx = cx - ordered[i].x;
+            double vy = cy - ordered[i].y;
+            double length = Math.sqrt(vx * vx + vy * vy);
+            quad[i] = new Point2D.Double(ordered[i].x + vx / length, ordered[i].y + vy / length);
+        }
+        if (signedArea(quad) < 0) {
+            Point2D.Double swap = quad[1];
+            quad[1] = quad[3];
+            quad[3] = swap;
+        }
+        return quad;
     }
 
-    private BufferedImage extractRegion(BufferedImage image, Rectangle boundingBox) {
-        return image.getSubimage(boundingBox.x, boundingBox.y, boundingBox.width, boundingBox.height);
+    private double signedArea(Point2D.Double[] quad) {
+        double area = 0;
+        for (int i = 0; i < quad.length; i++) {
+            Point2D.Double a = quad[i];
+            Point2D.Double b = quad[(i + 1) % quad.length];
+            area += a.x * b.y - b.x * a.y;
+        }
+        return area / 2;
     }
 
-    private boolean checkSolidBorder(BufferedImage image, int x1, int y1, int x2, int y2) {
-        int dx = (x2 - x1 == 0) ? 0 : 1; // Direction along x
-        int dy = (y2 - y1 == 0) ? 0 : 1; // Direction along y
+    /**
+     * Finds the corner where the two solid sides of the L finder pattern meet and
+     * rotates the clockwise quadrilateral so that corner becomes the bottom-left one.
+     *
+     * @return Corners ordered top-left, top-right, bottom-right, bottom-left, or null
+     *         if no L-shaped finder pattern is present.
+     */
+    private Point2D.Double[] orientByFinderPattern(BinaryPlane dark, Contour contour, Point2D.Double[] quad) {
+        boolean[] solid = new boolean[4];
+        boolean[] broken = new boolean[4];
+        for (int side = 0; side < 4; side++) {
+            double darkRatio = sampleSideDarkRatio(dark, quad, side);
+            solid[side] = darkRatio >= SOLID_BORDER_RATIO;
+            broken[side] = darkRatio >= BROKEN_BORDER_MIN_RATIO && darkRatio <= BROKEN_BORDER_MAX_RATIO;
+        }
 
-        int steps = Math.max(Math.abs(x2 - x1), Math.abs(y2 - y1));
+        // Side k runs from quad[k] to quad[k + 1]; the L corner is shared by two solid sides
+        for (int corner = 0; corner < 4; corner++) {
+            int incoming = (corner + 3) % 4;
+            int outgoing = corner;
+            if (solid[incoming] && solid[outgoing]
+                && broken[(corner + 1) % 4] && broken[(corner + 2) % 4]) {
+                // Clockwise from the bottom-left corner come top-left, top-right and bottom-right
+                Point2D.Double bottomLeft = quad[corner];
+                Point2D.Double topLeft = quad[(corner + 1) % 4];
+                Point2D.Double bottomRight = quad[(corner + 3) % 4];
 
-        for (int i = 0; i <= steps; i++) {
-            int x = x1 + i * dx;
-            int y = y1 + i * dy;
+                Point2D.Double topRight = estimateTopRight(contour, topLeft, bottomRight, bottomLeft);
 
-            int intensity = new Color(image.getRGB(x, y)).getRed();
-            if (intensity > 50) { // Pixel is not black
-                return false;
+                return new Point2D.Double[] { topLeft, topRight, bottomRight, bottomLeft };
             }
         }
-        return true; // All pixels are black
+        return null; // Does not have the required finder pattern
     }
 
-    private boolean checkBrokenBorder(BufferedImage image, int x1, int y1, int x2, int y2) {
-        int dx = (x2 - x1 == 0) ? 0 : 1; // Direction along x
-        int dy = (y2 - y1 == 0) ? 0 : 1; // Direction along y
+    /**
+     * Estimates the top-right corner as the intersection of the top and right edges. The top-right
+     * module is always light, so the contour has no corner there; instead each edge is fitted along
+     * the outer sides of its dark timing modules, which keeps the corner correct under perspective.
+     *
+     * @return The top-right corner, or the corner completing the parallelogram spanned by the
+     *         finder pattern if either edge cannot be fitted.
+     */
+    private Point2D.Double estimateTopRight(Contour contour, Point2D.Double topLeft,
+                                            Point2D.Double bottomRight, Point2D.Double bottomLeft) {
+        Point2D.Double parallelogram = new Point2D.Double(
+            topLeft.x + bottomRight.x - bottomLeft.x,
+            topLeft.y + bottomRight.y - bottomLeft.y);
+        PerspectiveTransform affine = PerspectiveTransform.squareToQuadrilateral(
+            topLeft, parallelogram, bottomRight, bottomLeft);
+
+        // In the parallelogram's symbol coordinates the top edge starts at (0, 0) along v = 0 and
+        // the right edge starts at (1, 1) along u = 1; measure each point along and outwards of both
+        List<Point> points = contour.getPoints();
+        double[] alongTop = new double[points.size()];
+        double[] outsideTop = new double[points.size()];
+        double[] alongRight = new double[points.size()];
+        double[] outsideRight = new double[points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            Point point = points.get(i);
+            Point2D.Double symbol = affine.inverseTransform(point.x, point.y);
+            alongTop[i] = symbol.x;
+            outsideTop[i] = -symbol.y;
+            alongRight[i] = 1 - symbol.y;
+            outsideRight[i] = symbol.x - 1;
+        }
 
-        int steps = Math.max(Math.abs(x2 - x1), Math.abs(y2 - y1));
-        boolean hasWhite = false;
-        boolean hasBlack = false;
+        double width = bottomLeft.distance(bottomRight);
+        double height = bottomLeft.distance(topLeft);
+        double topSlope = fitEdgeSlope(alongTop, outsideTop, width, height);
+        double rightSlope = fitEdgeSlope(alongRight, outsideRight, height, width);
+        double denominator = 1 - topSlope * rightSlope;
+        if (Double.isNaN(topSlope) || Double.isNaN(rightSlope) || denominator < 0.5) {
+            return parallelogram;
+        }
 
-        for (int i = 0; i <= steps; i++) {
-            int x = x1 + i * dx;
-            int y = y1 + i * dy;
+        // Intersect v = -topSlope * u with u = 1 + rightSlope * (1 - v)
+        double u = (1 + rightSlope) / denominator;
+        double v = -topSlope * u;
+        Point2D.Double corner = affine.transform(u, v);
+        if (corner.distance(parallelogram) < MIN_CORNER_SHIFT_RATIO * Math.max(width, height)) {
+            return parallelogram; // The edges agree with an affine view within their noise
+        }
+        return corner;
+    }
 
-            int intensity = new Color(image.getRGB(x, y)).getRed();
-            if (intensity < 50) {
-                hasBlack = true; // Pixel is black
-            } else {
-                hasWhite = true; // Pixel is white
+    /**
+     * Fits the slope of an edge line starting at a known corner, in symbol units. Only the outermost
+     * contour point of each pixel along the edge is used, which skips the inner sides of the
+     * timing modules; the line supported by the most of those points, less those outside it, is
+     * then refined by least squares and must pass within a few pixels of the corner.
+     *
+     * @param along Position of each contour point along the edge, 0 at the start corner.
+     * @param outside Distance of each contour point outwards from the parallelogram's edge.
+     * @param length Length of the edge in pixels.
+     * @param depth Length in pixels of one symbol unit across the edge.
+     * @return The slope of the edge relative to the parallelogram's, or NaN if no line fits.
+     */
+    private double fitEdgeSlope(double[] along, double[] outside, double length, double depth) {
+        int bins = (int) Math.ceil(length * (1 + MAX_EDGE_DEVIATION)) + 1;
+        double[] binAlong = new double[bins];
+        double[] binOutside = new double[bins];
+        boolean[] filled = new boolean[bins];
+        for (int i = 0; i < along.length; i++) {
+            if (along[i] < 0 || Math.abs(outside[i]) > MAX_EDGE_DEVIATION) {
+                continue;
             }
+            int bin = (int) (along[i] * length);
+            if (bin < bins && (!filled[bin] || outside[i] > binOutside[bin])) {
+                binAlong[bin] = along[i];
+                binOutside[bin] = outside[i];
+                filled[bin] = true;
+            }
+        }
+
+        // Try the lines through pairs of outermost points from the near and the far half of the edge
+        double tolerance = EDGE_TOLERANCE / depth;
+        double bestSlope = Double.NaN;
+        double bestOffset = 0;
+        int bestSupport = 0;
+        int half = (int) (length / 2);
+        for (int near = 0; near < half; near += EDGE_CANDIDATE_STRIDE) {
+            if (!filled[near]) {
+                continue;
+            }
+            for (int far = half; far < bins; far += EDGE_CANDIDATE_STRIDE) {
+                if (!filled[far]) {
+                    continue;
+                }
+                double slope = (binOutside[far] - binOutside[near]) / (binAlong[far] - binAlong[near]);
+                double offset = binOutside[near] - slope * binAlong[near];
+                // The edge bounds the symbol, so points outside a line count against it
+                int support = 0;
+                for (int bin = 0; bin < bins; bin++) {
+                    if (!filled[bin]) {
+                        continue;
+                    }
+                    double distance = binOutside[bin] - offset - slope * binAlong[bin];
+                    if (distance > tolerance) {
+                        support--;
+                    } else if (distance >= -tolerance) {
+                        support++;
+                    }
+                }
+                if (support > bestSupport) {
+                    bestSupport = support;
+                    bestSlope = slope;
+                    bestOffset = offset;
+                }
+            }
+        }
+        if (bestSupport < length * MIN_EDGE_SUPPORT_RATIO) {
+            return Double.NaN;
+        }
+
+        double sumX = 0, sumY = 0, sumXX = 0, sumXY = 0;
+        int count = 0;
+        for (int bin = 0; bin < bins; bin++) {
+            if (filled[bin] && Math.abs(binOutside[bin] - bestOffset - bestSlope * binAlong[bin]) <= tolerance) {
+                sumX += binAlong[bin];
+                sumY += binOutside[bin];
+                sumXX += binAlong[bin] * binAlong[bin];
+                sumXY += binAlong[bin] * binOutside[bin];
+                count++;
+            }
+        }
+        double spread = count * sumXX - sumX * sumX;
+        if (spread <= 0) {
+            return Double.NaN;
+        }
+        double slope = (count * sumXY - sumX * sumY) / spread;
+        double offset = (sumY - slope * sumX) / count;
+        // A line that misses the start corner follows the data rather than the edge
+        return Math.abs(offset) * depth <= MAX_EDGE_CORNER_DISTANCE ? slope : Double.NaN;
+    }
 
-            // If both white and black pixels are detected, it's a broken pattern
-            if (hasWhite && hasBlack) {
-                return true;
+    /**
+     * Samples a side of the quadrilateral slightly inset into the symbol.
+     *
+     * @return The fraction of dark samples along the side.
+     */
+    private double sampleSideDarkRatio(BinaryPlane plane, Point2D.Double[] quad, int side) {
+        Point2D.Double start = quad[side];
+        Point2D.Double end = quad[(side + 1) % 4];
+        Point2D.Double previous = quad[(side + 3) % 4];
+        Point2D.Double next = quad[(side + 2) % 4];
+
+        int steps = (int) Math.max(1, start.distance(end));
+        int dark = 0, total = 0;
+
+        // Skip the first and last few samples, where the neighbouring sides begin
+        int margin = Math.min(steps / 4, FINDER_INSET);
+        for (int i = margin; i <= steps - margin; i++) {
+            double t = (double) i / steps;
+            // Interpolate the side and the opposite side, then step inwards along the rung
+            double ox = start.x + t * (end.x - start.x);
+            double oy = start.y + t * (end.y - start.y);
+            double ix = previous.x + t * (next.x - previous.x);
+            double iy = previous.y + t * (next.y - previous.y);
+            double rung = Math.max(1, Math.hypot(ix - ox, iy - oy));
+            double x = ox + (ix - ox) * FINDER_INSET / rung;
+            double y = oy + (iy - oy) * FINDER_INSET / rung;
+
+            if (isDark(plane, x, y)) {
+                dark++;
             }
+            total++;
         }
-        return false; // Not a broken pattern
+        return total > 0 ? (double) dark / total : 0;
     }
 
-    private DataMatrixRegion extractRegion(Contour contour) {
-        // Extract and return the region based on the contour
-        return new DataMatrixRegion(contour.getBoundingBox());
+    private boolean isDark(BinaryPlane plane, double x, double y) {
+        int px = (int) Math.floor(x);
+        int py = (int) Math.floor(y);
+        if (px < 0 || px >= plane.getWidth() || py < 0 || py >= plane.getHeight()) {
+            return false;
+        }
+        return plane.isBlack(px, py);
     }
 
     private void saveImage(BufferedImage image, String filename) {
+        if (!DebuggingUtils.isDebugImagesEnabled()) {
+            return;
+        }
         try {
             File output = new File(filename);
             ImageIO.write(image, "png", output);
@@ -2,44 +2,60 @@ package ch.miguel.barcodewizard;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 
 public class DataMatrixRedrawer {
 
-    public BufferedImage redrawDataMatrix(BufferedImage image, int gridSize) {
-        int width = image.getWidth();
-        int height = image.getHeight();
+    // Offsets (in modules) of the sample points around each module centre
+    private static final double[] SAMPLE_OFFSETS = { -0.2, 0.0, 0.2 };
 
-        // Calculate the size of each module (chunk)
-        int cellWidth = width / gridSize;
-        int cellHeight = height / gridSize;
+    /**
+     * Samples the module grid of a symbol through a symbol-to-image transform,
+     * so rotated or skewed symbols are read in a single pass.
+     *
+     * @param image The binarized image containing the symbol.
+     * @param transform Transform from symbol space (unit square) to image space.
+     * @param gridSize Number of modules along each side.
+     * @return The module grid indexed as grid[x][y] (true = black, false = white).
+     */
+    public boolean[][] sampleGrid(BufferedImage image, PerspectiveTransform transform, int gridSize) {
+        boolean[][] grid = new boolean[gridSize][gridSize];
+
+        for (int i = 0; i < gridSize; i++) {
+            for (int j = 0; j < gridSize; j++) {
+                grid[i][j] = isModuleBlack(image, transform, gridSize, i, j);
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Renders a module grid as a clean, axis-aligned image.
+     *
+     * @param grid The module grid indexed as grid[x][y].
+     * @param moduleSize Size of each module in pixels.
+     * @return The redrawn symbol.
+     */
+    public BufferedImage redrawDataMatrix(boolean[][] grid, int moduleSize) {
+        int gridSize = grid.length;
+        int size = gridSize * moduleSize;
 
         // Create a new blank image
-        BufferedImage newImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        BufferedImage newImage = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
         Graphics2D g2d = newImage.createGraphics();
 
         // Set background to white
         g2d.setColor(Color.WHITE);
-        g2d.fillRect(0, 0, width, height);
+        g2d.fillRect(0, 0, size, size);
 
-        // Iterate through the grid and redraw each module
+        // Draw the perfect rectangle for each black module
+        g2d.setColor(Color.BLACK);
         for (int i = 0; i < gridSize; i++) {
             for (int j = 0; j < gridSize; j++) {
-                // Calculate the boundaries of the current cell
-                int startX = i * cellWidth;
-                int startY = j * cellHeight;
-                int endX = startX + cellWidth;
-                int endY = startY + cellHeight;
-
-                // Determine if the original cell is black or white
-                if (isCellBlack(image, startX, startY, endX, endY)) {
-                    g2d.setColor(Color.BLACK);
-                } else {
-                    g2d.setColor(Color.WHITE);
+                if (grid[i][j]) {
+                    g2d.fillRect(i * moduleSize, j * moduleSize, moduleSize, moduleSize);
                 }
-
-                // Draw the perfect rectangle for the module
-                g2d.fillRect(startX, startY, cellWidth, cellHeight);
             }
         }
 
@@ -47,12 +63,22 @@ public class DataMatrixRedrawer {
         return newImage;
     }
 
-    private boolean isCellBlack(BufferedImage image, int startX, int startY, int endX, int endY) {
+    private boolean isModuleBlack(BufferedImage image, PerspectiveTransform transform, int gridSize, int i, int j) {
         int blackPixelCount = 0;
         int totalPixelCount = 0;
 
-        for (int x = startX; x < endX; x++) {
-            for (int y = startY; y < endY; y++) {
+        // Sample a small neighbourhood around the module centre
+        for (double du : SAMPLE_OFFSETS) {
+            for (double dv : SAMPLE_OFFSETS) {
+                double u = (i + 0.5 + du) / gridSize;
+                double v = (j + 0.5 + dv) / gridSize;
+                Point2D.Double point = transform.transform(u, v);
+                int x = (int) Math.floor(point.x);
+                int y = (int) Math.floor(point.y);
+                if (x < 0 || x >= image.getWidth() || y < 0 || y >= image.getHeight()) {
+                    continue;
+                }
+
                 int grayValue = new Color(image.getRGB(x, y)).getRed();
                 if (grayValue < 128) { // Black pixel
                     blackPixelCount++;
@@ -61,8 +87,7 @@ public class DataMatrixRedrawer {
             }
         }
 
-        // A cell is considered black if more than half of its pixels are black
-        return blackPixelCount > (totalPixelCount / 1.75);
+        // A module is considered black if more than half of its samples are black
+        return blackPixelCount * 2 > totalPixelCount;
     }
 }
-
@@ -1,20 +1,76 @@
 package ch.miguel.barcodewizard;
 
 import java.awt.Rectangle;
+import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 
 public class DataMatrixRegion {
     private Rectangle boundingBox;
+    private Point2D.Double[] corners;
     private BufferedImage image;
 
     public DataMatrixRegion(Rectangle boundingBox) {
+        this(boundingBox, null);
+    }
+
+    /**
+     * Creates a region with known symbol corners.
+     *
+     * @param boundingBox Axis-aligned bounds of the symbol in the image.
+     * @param corners Symbol corners ordered top-left, top-right, bottom-right, bottom-left,
+     *                where the L finder pattern runs along the left and bottom sides.
+     */
+    public DataMatrixRegion(Rectangle boundingBox, Point2D.Double[] corners) {
         this.boundingBox = boundingBox;
+        this.corners = corners;
     }
 
     public Rectangle getBoundingBox() {
         return boundingBox;
     }
 
+    /**
+     * Returns the symbol corners, falling back to the bounding box corners
+     * when no orientation was estimated.
+     */
+    public Point2D.Double[] getCorners() {
+        if (corners != null) {
+            return corners;
+        }
+        return new Point2D.Double[] {
+            new Point2D.Double(boundingBox.x, boundingBox.y),
+            new Point2D.Double(boundingBox.x + boundingBox.width, boundingBox.y),
+            new Point2D.Double(boundingBox.x + boundingBox.width, boundingBox.y + boundingBox.height),
+            new Point2D.Double(boundingBox.x, boundingBox.y + boundingBox.height)
+        };
+    }
+
+    /**
+     * Returns the transform from symbol space (unit square) to image space.
+     */
+    public PerspectiveTransform getTransform() {
+        Point2D.Double[] c = getCorners();
+        return PerspectiveTransform.squareToQuadrilateral(c[0], c[1], c[2], c[3]);
+    }
+
+    /**
+     * Returns a copy of this region moved by the given offset, e.g. to map a region found
+     * in a cropped window back to full-frame coordinates. The image is not carried over.
+     */
+    public DataMatrixRegion translate(int dx, int dy) {
+        Rectangle movedBox = new Rectangle(boundingBox);
+        movedBox.translate(dx, dy);
+        if (corners == null) {
+            return new DataMatrixRegion(movedBox);
+        }
+
+        Point2D.Double[] movedCorners = new Point2D.Double[corners.length];
+        for (int i = 0; i < corners.length; i++) {
+            movedCorners[i] = new Point2D.Double(corners[i].x + dx, corners[i].y + dy);
+        }
+        return new DataMatrixRegion(movedBox, movedCorners);
+    }
+
     public BufferedImage getImage() {
         return image;
     }
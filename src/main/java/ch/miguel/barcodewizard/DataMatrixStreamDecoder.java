@@ -0,0 +1,215 @@
+package ch.miguel.barcodewizard;
+
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.Imaging;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Stateful decoder for a continuous stream of frames, e.g. from a conveyor camera.
+ * It remembers where the last symbol was found and searches a widened window around it
+ * first, skips frames whose window has not changed, and falls back to a full-frame
+ * search when tracking is lost. Instances are not thread-safe; use one per stream.
+ */
+public class DataMatrixStreamDecoder {
+
+    /**
+     * How a frame was handled.
+     */
+    public enum FrameStatus {
+        /** The tracked window did not change; the previous result was reused. */
+        UNCHANGED,
+        /** The symbol was decoded inside the tracked window. */
+        TRACKED,
+        /** The symbol was decoded by a full-frame search. */
+        FULL_FRAME,
+        /** No symbol was decoded in this frame. */
+        NOT_FOUND
+    }
+
+    // Search window margin, as a fraction of the tracked symbol's larger side
+    private static final double WINDOW_MARGIN = 0.5;
+    // Mean absolute gray-level difference below which a window counts as unchanged
+    private static final double CHANGE_THRESHOLD = 4.0;
+    // Only every n-th pixel in each direction is compared for change detection
+    private static final int CHANGE_SAMPLE_STEP = 2;
+
+    private final CustomDataMatrixExtractor extractor;
+    private final Map<FrameStatus, Long> statusCounts = new EnumMap<>(FrameStatus.class);
+
+    private Rectangle trackedBox;
+    private Rectangle lastWindow;
+    private int[] lastWindowPixels;
+    private ExtractionResult lastResult = ExtractionResult.notFound();
+    private FrameStatus lastStatus;
+
+    public DataMatrixStreamDecoder() {
+        this(new CustomDataMatrixExtractor(BinarizationMode.CASCADE));
+    }
+
+    public DataMatrixStreamDecoder(CustomDataMatrixExtractor extractor) {
+        this.extractor = extractor;
+        for (FrameStatus status : FrameStatus.values()) {
+            statusCounts.put(status, 0L);
+        }
+    }
+
+    /**
+     * Decodes the next frame of the stream.
+     *
+     * @param frame The frame image.
+     * @return The extraction result in frame coordinates; never null.
+     */
+    public ExtractionResult decodeFrame(BufferedImage frame) {
+        if (trackedBox != null) {
+            Rectangle window = searchWindow(trackedBox, frame);
+            int[] windowPixels = readWindow(frame, window);
+
+            // Step 1: Skip frames whose window has not changed meaningfully
+            if (window.equals(lastWindow) && !hasChanged(lastWindowPixels, windowPixels)) {
+                // Same position, but the region must point at this frame rather than the previous one
+                DataMatrixRegion region = lastResult.getRegion().translate(0, 0);
+                region.setImage(frame);
+                return finish(new ExtractionResult(lastResult.getData(), region, lastResult.getTier()),
+                              FrameStatus.UNCHANGED);
+            }
+
+            // Step 2: Search the window around the last known position
+            BufferedImage windowImage = ImagePlanes.toGrayImage(windowPixels, window.width, window.height);
+            ExtractionResult result = extractor.search(windowImage, CancellationToken.create());
+            if (result.isSuccess()) {
+                DataMatrixRegion region = result.getRegion().translate(window.x, window.y);
+                region.setImage(frame);
+                track(region, frame);
+                return finish(new ExtractionResult(result.getData(), region, result.getTier()), FrameStatus.TRACKED);
+            }
+
+            // Tracking lost
+            trackedBox = null;
+        }
+
+        // Step 3: Fall back to a full-frame search
+        ExtractionResult result = extractor.search(frame, CancellationToken.create());
+        if (!result.isSuccess()) {
+            lastWindow = null;
+            lastWindowPixels = null;
+            return finish(result, FrameStatus.NOT_FOUND);
+        }
+
+        track(result.getRegion(), frame);
+        return finish(result, FrameStatus.FULL_FRAME);
+    }
+
+    /**
+     * Decodes every image in a directory as consecutive frames, in file name order.
+     *
+     * @param directory Directory containing the frame images.
+     * @return One result per frame, in order.
+     */
+    public List<ExtractionResult> decodeDirectory(Path directory) throws IOException {
+        List<Path> frames;
+        try (Stream<Path> files = Files.list(directory)) {
+            frames = files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+
+        List<ExtractionResult> results = new ArrayList<>();
+        for (Path frame : frames) {
+            try {
+                results.add(decodeFrame(Imaging.getBufferedImage(frame.toFile())));
+            } catch (ImageReadException | IOException e) {
+                System.err.println("Error reading frame " + frame + ": " + e.getMessage());
+                results.add(finish(ExtractionResult.notFound(), FrameStatus.NOT_FOUND));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Forgets the tracked position, so the next frame gets a full-frame search.
+     */
+    public void reset() {
+        trackedBox = null;
+        lastWindow = null;
+        lastWindowPixels = null;
+        lastResult = ExtractionResult.notFound();
+        lastStatus = null;
+    }
+
+    /**
+     * Returns how the most recent frame was handled, or null before the first frame.
+     */
+    public FrameStatus getLastStatus() {
+        return lastStatus;
+    }
+
+    /**
+     * Returns the number of frames handled per status since this decoder was created.
+     */
+    public Map<FrameStatus, Long> getStatusCounts() {
+        return new EnumMap<>(statusCounts);
+    }
+
+    private void track(DataMatrixRegion region, BufferedImage frame) {
+        trackedBox = region.getBoundingBox();
+        // Remember the window the next frame will be compared against
+        lastWindow = searchWindow(trackedBox, frame);
+        lastWindowPixels = readWindow(frame, lastWindow);
+    }
+
+    /**
+     * Reads the window's luminance, as the full-frame search does, so that coloured symbols
+     * are tracked and their movement is detected.
+     */
+    private int[] readWindow(BufferedImage frame, Rectangle window) {
+        return ImagePlanes.readLuminance(frame.getSubimage(window.x, window.y, window.width, window.height));
+    }
+
+    /**
+     * Records the frame's outcome. The extractor's statistics count each searched frame once,
+     * however many searches it took; unchanged frames were not searched and are not counted.
+     */
+    private ExtractionResult finish(ExtractionResult result, FrameStatus status) {
+        if (status != FrameStatus.UNCHANGED) {
+            extractor.getStatistics().record(result);
+        }
+        lastResult = result;
+        lastStatus = status;
+        statusCounts.merge(status, 1L, Long::sum);
+        return result;
+    }
+
+    private Rectangle searchWindow(Rectangle box, BufferedImage frame) {
+        int margin = (int) Math.ceil(Math.max(box.width, box.height) * WINDOW_MARGIN);
+        Rectangle window = new Rectangle(box);
+        window.grow(margin, margin);
+        return window.intersection(new Rectangle(0, 0, frame.getWidth(), frame.getHeight()));
+    }
+
+    private boolean hasChanged(int[] previous, int[] current) {
+        if (previous == null || previous.length != current.length) {
+            return true;
+        }
+
+        int width = lastWindow.width;
+        long difference = 0;
+        int samples = 0;
+        for (int y = 0; y < lastWindow.height; y += CHANGE_SAMPLE_STEP) {
+            for (int x = 0; x < width; x += CHANGE_SAMPLE_STEP) {
+                int i = y * width + x;
+                difference += Math.abs(previous[i] - current[i]);
+                samples++;
+            }
+        }
+        return samples == 0 || (double) difference / samples > CHANGE_THRESHOLD;
+    }
+}
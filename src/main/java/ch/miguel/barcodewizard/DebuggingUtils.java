@@ -8,6 +8,29 @@ import java.awt.Rectangle;
 
 public class DebuggingUtils {
 
+    /**
+     * System property that turns the intermediate debug PNGs off when set to "false".
+     */
+    public static final String DEBUG_IMAGES_PROPERTY = "barcodewizard.debugImages";
+
+    private static volatile boolean debugImagesEnabled =
+        Boolean.parseBoolean(System.getProperty(DEBUG_IMAGES_PROPERTY, "true"));
+
+    /**
+     * Returns whether the pipeline stages write their intermediate images to the working directory.
+     */
+    public static boolean isDebugImagesEnabled() {
+        return debugImagesEnabled;
+    }
+
+    /**
+     * Enables or disables writing intermediate images. Writing them costs far more than
+     * decoding, so throughput-sensitive callers should turn them off.
+     */
+    public static void setDebugImagesEnabled(boolean enabled) {
+        debugImagesEnabled = enabled;
+    }
+
     /**
      * Draws bounding boxes on the given image.
      *
@@ -0,0 +1,13 @@
+package ch.miguel.barcodewizard;
+
+/**
+ * The binarization tier that produced a successful decode.
+ */
+public enum DecodeTier {
+    /** CCITT bilevel input, decoded without any binarization. */
+    BILEVEL,
+    /** A single Otsu threshold over the whole page. */
+    GLOBAL,
+    /** Gaussian blur and adaptive thresholding, the fallback of the cascade. */
+    ADAPTIVE
+}
@@ -0,0 +1,365 @@
+package ch.miguel.barcodewizard;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes content into a square ECC200 Data Matrix module grid, following ISO/IEC 16022:
+ * ASCII encodation (digit pairs compacted), Reed-Solomon error correction over GF(256)
+ * and the standard module placement. Used to generate synthetic test symbols.
+ */
+public class Ecc200Encoder {
+
+    // Square symbol sizes up to 132x132:
+    // symbol size, data codewords, error correction codewords, data region size, interleaved blocks
+    private static final int[][] SYMBOL_SIZES = {
+        { 10, 3, 5, 8, 1 },
+        { 12, 5, 7, 10, 1 },
+        { 14, 8, 10, 12, 1 },
+        { 16, 12, 12, 14, 1 },
+        { 18, 18, 14, 16, 1 },
+        { 20, 22, 18, 18, 1 },
+        { 22, 30, 20, 20, 1 },
+        { 24, 36, 24, 22, 1 },
+        { 26, 44, 28, 24, 1 },
+        { 32, 62, 36, 14, 1 },
+        { 36, 86, 42, 16, 1 },
+        { 40, 114, 48, 18, 1 },
+        { 44, 144, 56, 20, 1 },
+        { 48, 174, 68, 22, 1 },
+        { 52, 204, 84, 24, 2 },
+        { 64, 280, 112, 14, 2 },
+        { 72, 368, 144, 16, 4 },
+        { 80, 456, 192, 18, 4 },
+        { 88, 576, 224, 20, 4 },
+        { 96, 696, 272, 22, 4 },
+        { 104, 816, 336, 24, 6 },
+        { 120, 1050, 408, 18, 6 },
+        { 132, 1304, 496, 20, 8 }
+    };
+
+    private static final int PAD = 129;
+    private static final int UPPER_SHIFT = 235;
+    private static final int DIGIT_PAIR_BASE = 130;
+
+    // GF(256) with the Data Matrix field polynomial x^8 + x^5 + x^3 + x^2 + 1
+    private static final int FIELD_POLYNOMIAL = 0x12d;
+    private static final int[] EXP = new int[255];
+    private static final int[] LOG = new int[256];
+
+    static {
+        int value = 1;
+        for (int i = 0; i < 255; i++) {
+            EXP[i] = value;
+            LOG[value] = i;
+            value <<= 1;
+            if (value >= 256) {
+                value ^= FIELD_POLYNOMIAL;
+            }
+        }
+    }
+
+    /**
+     * Encodes the content into the smallest square symbol that holds it.
+     *
+     * @param content The content; characters outside ISO-8859-1 are not supported.
+     * @return The module grid indexed as grid[x][y], true for dark modules, with the
+     *         L finder pattern along the left and bottom sides.
+     * @throws IllegalArgumentException if the content does not fit into a 132x132 symbol.
+     */
+    public boolean[][] encode(String content) {
+        int[] size = symbolSize(content);
+        int[] codewords = codewords(content, size);
+        int regionSize = size[3];
+        int regions = size[0] / (regionSize + 2);
+        int[][] placement = placeModules(regions * regionSize, regions * regionSize);
+        return buildSymbol(placement, codewords, size[0], regionSize);
+    }
+
+    /**
+     * Returns the data codewords followed by the interleaved error correction codewords
+     * of the smallest symbol that holds the content.
+     */
+    int[] codewords(String content) {
+        return codewords(content, symbolSize(content));
+    }
+
+    private static int[] codewords(String content, int[] size) {
+        return addErrorCorrection(pad(encodeAscii(content), size[1]), size[2], size[4]);
+    }
+
+    private static int[] symbolSize(String content) {
+        int dataCodewords = encodeAscii(content).length;
+        for (int[] candidate : SYMBOL_SIZES) {
+            if (candidate[1] >= dataCodewords) {
+                return candidate;
+            }
+        }
+        throw new IllegalArgumentException("Content too long for a Data Matrix symbol: " + content.length() + " characters");
+    }
+
+    private static int[] encodeAscii(String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.ISO_8859_1);
+        int[] codewords = new int[bytes.length * 2];
+        int count = 0;
+
+        for (int i = 0; i < bytes.length; i++) {
+            int c = bytes[i] & 0xff;
+            if (isDigit(c) && i + 1 < bytes.length && isDigit(bytes[i + 1] & 0xff)) {
+                codewords[count++] = DIGIT_PAIR_BASE + (c - '0') * 10 + ((bytes[++i] & 0xff) - '0');
+            } else if (c > 127) {
+                codewords[count++] = UPPER_SHIFT;
+                codewords[count++] = c - 127;
+            } else {
+                codewords[count++] = c + 1;
+            }
+        }
+
+        int[] result = new int[count];
+        System.arraycopy(codewords, 0, result, 0, count);
+        return result;
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Fills the remaining data capacity with the first pad codeword and scrambled pads after it.
+     */
+    private static int[] pad(int[] data, int capacity) {
+        int[] padded = new int[capacity];
+        System.arraycopy(data, 0, padded, 0, data.length);
+        for (int i = data.length; i < capacity; i++) {
+            if (i == data.length) {
+                padded[i] = PAD;
+            } else {
+                int position = i + 1;
+                int scrambled = PAD + ((149 * position) % 253) + 1;
+                padded[i] = scrambled <= 254 ? scrambled : scrambled - 254;
+            }
+        }
+        return padded;
+    }
+
+    /**
+     * Appends the Reed-Solomon codewords, interleaving data and error correction across blocks.
+     */
+    private static int[] addErrorCorrection(int[] data, int errorCodewords, int blocks) {
+        int blockErrorCodewords = errorCodewords / blocks;
+        int[] generator = generatorPolynomial(blockErrorCodewords);
+        int[] codewords = new int[data.length + errorCodewords];
+        System.arraycopy(data, 0, codewords, 0, data.length);
+
+        for (int block = 0; block < blocks; block++) {
+            int[] remainder = new int[blockErrorCodewords];
+            for (int i = block; i < data.length; i += blocks) {
+                int feedback = data[i] ^ remainder[0];
+                System.arraycopy(remainder, 1, remainder, 0, blockErrorCodewords - 1);
+                remainder[blockErrorCodewords - 1] = 0;
+                if (feedback != 0) {
+                    for (int j = 0; j < blockErrorCodewords; j++) {
+                        remainder[j] ^= multiply(feedback, generator[j + 1]);
+                    }
+                }
+            }
+            for (int j = 0; j < blockErrorCodewords; j++) {
+                codewords[data.length + block + j * blocks] = remainder[j];
+            }
+        }
+        return codewords;
+    }
+
+    /**
+     * Returns the coefficients of (x - a^1)(x - a^2)...(x - a^degree), highest degree first.
+     */
+    private static int[] generatorPolynomial(int degree) {
+        int[] polynomial = new int[degree + 1];
+        polynomial[0] = 1;
+        for (int root = 1; root <= degree; root++) {
+            for (int j = root; j > 0; j--) {
+                polynomial[j] ^= multiply(polynomial[j - 1], EXP[root]);
+            }
+        }
+        return polynomial;
+    }
+
+    private static int multiply(int a, int b) {
+        if (a == 0 || b == 0) {
+            return 0;
+        }
+        return EXP[(LOG[a] + LOG[b]) % 255];
+    }
+
+    /**
+     * Runs the ECC200 placement over the mapping matrix (the data regions without their
+     * finder and timing patterns). Each cell holds codeword * 10 + bit (bit 1 is the most
+     * significant), or 1 / 0 for the fixed dark / light modules of the unused corner.
+     */
+    static int[][] placeModules(int rows, int columns) {
+        int[][] placement = new int[rows][columns];
+        Placement p = new Placement(placement, rows, columns);
+
+        int codeword = 1;
+        int row = 4;
+        int column = 0;
+        do {
+            if (row == rows && column == 0) {
+                p.corner1(codeword++);
+            }
+            if (row == rows - 2 && column == 0 && columns % 4 != 0) {
+                p.corner2(codeword++);
+            }
+            if (row == rows - 2 && column == 0 && columns % 8 == 4) {
+                p.corner3(codeword++);
+            }
+            if (row == rows + 4 && column == 2 && columns % 8 == 0) {
+                p.corner4(codeword++);
+            }
+
+            // Sweep up and to the right
+            do {
+                if (row < rows && column >= 0 && placement[row][column] == 0) {
+                    p.utah(row, column, codeword++);
+                }
+                row -= 2;
+                column += 2;
+            } while (row >= 0 && column < columns);
+            row += 1;
+            column += 3;
+
+            // Sweep down and to the left
+            do {
+                if (row >= 0 && column < columns && placement[row][column] == 0) {
+                    p.utah(row, column, codeword++);
+                }
+                row += 2;
+                column -= 2;
+            } while (row < rows && column >= 0);
+            row += 3;
+            column += 1;
+        } while (row < rows || column < columns);
+
+        // Fixed pattern in the unused bottom-right corner
+        if (placement[rows - 1][columns - 1] == 0) {
+            placement[rows - 1][columns - 1] = 1;
+            placement[rows - 2][columns - 2] = 1;
+        }
+        return placement;
+    }
+
+    private static boolean[][] buildSymbol(int[][] placement, int[] codewords, int symbolSize, int regionSize) {
+        boolean[][] grid = new boolean[symbolSize][symbolSize];
+        int regionStride = regionSize + 2;
+
+        for (int y = 0; y < symbolSize; y++) {
+            int regionY = y % regionStride;
+            for (int x = 0; x < symbolSize; x++) {
+                int regionX = x % regionStride;
+                if (regionX == 0 || regionY == regionStride - 1) {
+                    // Solid L of the finder pattern
+                    grid[x][y] = true;
+                } else if (regionY == 0) {
+                    grid[x][y] = regionX % 2 == 0;
+                } else if (regionX == regionStride - 1) {
+                    grid[x][y] = regionY % 2 == 1;
+                } else {
+                    int row = (y / regionStride) * regionSize + regionY - 1;
+                    int column = (x / regionStride) * regionSize + regionX - 1;
+                    grid[x][y] = isDark(placement[row][column], codewords);
+                }
+            }
+        }
+        return grid;
+    }
+
+    private static boolean isDark(int cell, int[] codewords) {
+        if (cell < 10) {
+            return cell == 1;
+        }
+        int codeword = codewords[cell / 10 - 1];
+        int bit = cell % 10;
+        return ((codeword >> (8 - bit)) & 1) == 1;
+    }
+
+    /**
+     * The placement primitives of ISO/IEC 16022 Annex F, with wrap-around at the matrix edges.
+     */
+    private static class Placement {
+        private final int[][] cells;
+        private final int rows;
+        private final int columns;
+
+        Placement(int[][] cells, int rows, int columns) {
+            this.cells = cells;
+            this.rows = rows;
+            this.columns = columns;
+        }
+
+        void module(int row, int column, int codeword, int bit) {
+            if (row < 0) {
+                row += rows;
+                column += 4 - ((rows + 4) % 8);
+            }
+            if (column < 0) {
+                column += columns;
+                row += 4 - ((columns + 4) % 8);
+            }
+            cells[row][column] = codeword * 10 + bit;
+        }
+
+        void utah(int row, int column, int codeword) {
+            module(row - 2, column - 2, codeword, 1);
+            module(row - 2, column - 1, codeword, 2);
+            module(row - 1, column - 2, codeword, 3);
+            module(row - 1, column - 1, codeword, 4);
+            module(row - 1, column, codeword, 5);
+            module(row, column - 2, codeword, 6);
+            module(row, column - 1, codeword, 7);
+            module(row, column, codeword, 8);
+        }
+
+        void corner1(int codeword) {
+            module(rows - 1, 0, codeword, 1);
+            module(rows - 1, 1, codeword, 2);
+            module(rows - 1, 2, codeword, 3);
+            module(0, columns - 2, codeword, 4);
+            module(0, columns - 1, codeword, 5);
+            module(1, columns - 1, codeword, 6);
+            module(2, columns - 1, codeword, 7);
+            module(3, columns - 1, codeword, 8);
+        }
+
+        void corner2(int codeword) {
+            module(rows - 3, 0, codeword, 1);
+            module(rows - 2, 0, codeword, 2);
+            module(rows - 1, 0, codeword, 3);
+            module(0, columns - 4, codeword, 4);
+            module(0, columns - 3, codeword, 5);
+            module(0, columns - 2, codeword, 6);
+            module(0, columns - 1, codeword, 7);
+            module(1, columns - 1, codeword, 8);
+        }
+
+        void corner3(int codeword) {
+            module(rows - 3, 0, codeword, 1);
+            module(rows - 2, 0, codeword, 2);
+            module(rows - 1, 0, codeword, 3);
+            module(0, columns - 2, codeword, 4);
+            module(0, columns - 1, codeword, 5);
+            module(1, columns - 1, codeword, 6);
+            module(2, columns - 1, codeword, 7);
+            module(3, columns - 1, codeword, 8);
+        }
+
+        void corner4(int codeword) {
+            module(rows - 1, 0, codeword, 1);
+            module(rows - 1, columns - 1, codeword, 2);
+            module(0, columns - 3, codeword, 3);
+            module(0, columns - 2, codeword, 4);
+            module(0, columns - 1, codeword, 5);
+            module(1, columns - 3, codeword, 6);
+            module(1, columns - 2, codeword, 7);
+            module(1, columns - 1, codeword, 8);
+        }
+    }
+}
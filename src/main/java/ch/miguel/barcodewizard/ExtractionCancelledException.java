@@ -0,0 +1,30 @@
+package ch.miguel.barcodewizard;
+
+/**
+ * Thrown from a pipeline checkpoint when the extraction's {@link CancellationToken}
+ * was cancelled or ran out of time.
+ */
+public class ExtractionCancelledException extends RuntimeException {
+    private final boolean timedOut;
+    private final String stage;
+    private final long elapsedMillis;
+
+    public ExtractionCancelledException(boolean timedOut, String stage, long elapsedMillis) {
+        super((timedOut ? "Timed out" : "Cancelled") + " during " + stage + " after " + elapsedMillis + " ms");
+        this.timedOut = timedOut;
+        this.stage = stage;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+}
@@ -0,0 +1,89 @@
+package ch.miguel.barcodewizard;
+
+/**
+ * Outcome of a single extraction: the decoded content together with where it was found
+ * and which binarization tier found it.
+ */
+public class ExtractionResult {
+    private static final ExtractionResult NOT_FOUND = new ExtractionResult(null, null, null);
+
+    private final ExtractionStatus status;
+    private final String data;
+    private final DataMatrixRegion region;
+    private final DecodeTier tier;
+    private final String stage;
+    private final long elapsedMillis;
+
+    public ExtractionResult(String data, DataMatrixRegion region, DecodeTier tier) {
+        this(data != null ? ExtractionStatus.DECODED : ExtractionStatus.NOT_FOUND, data, region, tier, null, -1);
+    }
+
+    private ExtractionResult(ExtractionStatus status, String data, DataMatrixRegion region, DecodeTier tier,
+                             String stage, long elapsedMillis) {
+        this.status = status;
+        this.data = data;
+        this.region = region;
+        this.tier = tier;
+        this.stage = stage;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public static ExtractionResult notFound() {
+        return NOT_FOUND;
+    }
+
+    /**
+     * Creates the result of an extraction that was stopped at a checkpoint.
+     */
+    public static ExtractionResult interrupted(ExtractionCancelledException e) {
+        ExtractionStatus status = e.isTimedOut() ? ExtractionStatus.TIMED_OUT : ExtractionStatus.CANCELLED;
+        return new ExtractionResult(status, null, null, null, e.getStage(), e.getElapsedMillis());
+    }
+
+    public ExtractionStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns the decoded content, or null if decoding failed.
+     */
+    public String getData() {
+        return data;
+    }
+
+    /**
+     * Returns the located region, or null if no Data Matrix was decoded.
+     */
+    public DataMatrixRegion getRegion() {
+        return region;
+    }
+
+    /**
+     * Returns the tier that decoded the symbol, or null if decoding failed.
+     */
+    public DecodeTier getTier() {
+        return tier;
+    }
+
+    /**
+     * For timed out or cancelled extractions, returns the stage that was running; null otherwise.
+     */
+    public String getStage() {
+        return stage;
+    }
+
+    /**
+     * For timed out or cancelled extractions, returns the time spent before stopping; -1 otherwise.
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public boolean isSuccess() {
+        return data != null;
+    }
+
+    public boolean isInterrupted() {
+        return status == ExtractionStatus.TIMED_OUT || status == ExtractionStatus.CANCELLED;
+    }
+}
@@ -0,0 +1,58 @@
+package ch.miguel.barcodewizard;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe counters of extraction outcomes, to monitor the split between the direct
+ * bilevel path, the fast global-threshold path and the adaptive fallback.
+ */
+public class ExtractionStatistics {
+    private final AtomicLong bilevelDecodes = new AtomicLong();
+    private final AtomicLong globalDecodes = new AtomicLong();
+    private final AtomicLong adaptiveDecodes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong interruptions = new AtomicLong();
+
+    void record(ExtractionResult result) {
+        if (result.isInterrupted()) {
+            interruptions.incrementAndGet();
+        } else if (result.getTier() == DecodeTier.BILEVEL) {
+            bilevelDecodes.incrementAndGet();
+        } else if (result.getTier() == DecodeTier.GLOBAL) {
+            globalDecodes.incrementAndGet();
+        } else if (result.getTier() == DecodeTier.ADAPTIVE) {
+            adaptiveDecodes.incrementAndGet();
+        } else {
+            failures.incrementAndGet();
+        }
+    }
+
+    public long getBilevelDecodes() {
+        return bilevelDecodes.get();
+    }
+
+    public long getGlobalDecodes() {
+        return globalDecodes.get();
+    }
+
+    public long getAdaptiveDecodes() {
+        return adaptiveDecodes.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Returns the number of extractions that timed out or were cancelled.
+     */
+    public long getInterruptions() {
+        return interruptions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "bilevel=" + getBilevelDecodes() + ", global=" + getGlobalDecodes() + ", adaptive=" + getAdaptiveDecodes() + ", failed=" + getFailures()
+            + ", interrupted=" + getInterruptions();
+    }
+}
@@ -0,0 +1,15 @@
+package ch.miguel.barcodewizard;
+
+/**
+ * Overall outcome of an extraction.
+ */
+public enum ExtractionStatus {
+    /** A Data Matrix was located and decoded. */
+    DECODED,
+    /** The pipeline ran to completion without decoding a Data Matrix. */
+    NOT_FOUND,
+    /** The time budget ran out before the pipeline finished. */
+    TIMED_OUT,
+    /** The caller cancelled the extraction before the pipeline finished. */
+    CANCELLED
+}
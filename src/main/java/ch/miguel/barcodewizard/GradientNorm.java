@@ -0,0 +1,15 @@
+package ch.miguel.barcodewizard;
+
+/**
+ * How the Sobel gradient components are combined into an edge intensity.
+ * All norms are clamped to 255 and agree on which pixels are non-zero,
+ * which is all the contour search looks at.
+ */
+public enum GradientNorm {
+    /** sqrt(gx² + gy²), the exact magnitude. */
+    EUCLIDEAN,
+    /** |gx| + |gy|, avoids the square root. */
+    L1,
+    /** gx² + gy², avoids the square root. */
+    SQUARED
+}
@@ -0,0 +1,50 @@
+package ch.miguel.barcodewizard;
+
+/**
+ * Per-pixel image kernels used by the preprocessing and locating stages.
+ * Images are passed as row-major planes of gray values (0-255).
+ */
+public interface ImageKernels {
+
+    /**
+     * System property selecting the implementation: "auto" (default), "scalar" or "vector".
+     */
+    String KERNELS_PROPERTY = "barcodewizard.kernels";
+
+    /**
+     * Applies the 5x5 binomial (Gaussian) kernel. The two-pixel border of dst is left untouched.
+     */
+    void gaussianBlur(int[] src, int[] dst, int width, int height);
+
+    /**
+     * Thresholds every pixel against the mean of its blockSize x blockSize neighbourhood
+     * (clipped to the image) minus c. dst receives 255 for white and 0 for black.
+     */
+    void adaptiveThreshold(int[] src, int[] dst, int width, int height, int blockSize, int c);
+
+    /**
+     * Computes a global threshold from the gray-level histogram using Otsu's method,
+     * i.e. the level that maximises the variance between the dark and light classes.
+     *
+     * @return The threshold; pixels above it are white.
+     */
+    int otsuThreshold(int[] src);
+
+    /**
+     * Thresholds every pixel against a single level. dst receives 255 for white and 0 for black.
+     */
+    void threshold(int[] src, int[] dst, int threshold);
+
+    /**
+     * Computes the Sobel edge intensity. The one-pixel border of dst is left untouched.
+     */
+    void sobel(int[] src, int[] dst, int width, int height, GradientNorm norm);
+
+    /**
+     * Returns the kernels for this runtime: the Vector API backend when it is available
+     * (Java 17+ with --add-modules jdk.incubator.vector), the scalar one otherwise.
+     */
+    static ImageKernels getDefault() {
+        return ImageKernelsFactory.DEFAULT;
+    }
+}
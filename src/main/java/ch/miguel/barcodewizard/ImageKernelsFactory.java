@@ -0,0 +1,30 @@
+package ch.miguel.barcodewizard;
+
+/**
+ * Chooses the {@link ImageKernels} backend once per JVM, honouring {@link ImageKernels#KERNELS_PROPERTY}.
+ */
+class ImageKernelsFactory {
+
+    static final ImageKernels DEFAULT = create(System.getProperty(ImageKernels.KERNELS_PROPERTY, "auto"));
+
+    // Only present in the Java 17 layer of the multi-release jar
+    private static final String VECTOR_CLASS = "ch.miguel.barcodewizard.VectorImageKernels";
+
+    /**
+     * Creates the kernels for a mode: "scalar" always gives the scalar kernels, "auto" and
+     * "vector" give the Vector API kernels when they can be loaded and the scalar ones otherwise.
+     */
+    static ImageKernels create(String mode) {
+        if (!"scalar".equals(mode)) {
+            try {
+                Class<?> vectorClass = Class.forName(VECTOR_CLASS);
+                return (ImageKernels) vectorClass.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                if ("vector".equals(mode)) {
+                    System.err.println("Vector API kernels unavailable, using scalar kernels: " + e);
+                }
+            }
+        }
+        return new ScalarImageKernels();
+    }
+}
@@ -0,0 +1,109 @@
+package ch.miguel.barcodewizard;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Conversions between BufferedImages and the row-major gray planes used by {@link ImageKernels}.
+ */
+public class ImagePlanes {
+
+    /**
+     * Reads the gray (red channel) value of every pixel.
+     *
+     * @param image The source image.
+     * @return Row-major gray values in the range 0-255.
+     */
+    public static int[] readGray(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        if (image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            return image.getRaster().getSamples(0, 0, width, height, 0, (int[]) null);
+        }
+
+        // Bilevel images: map the palette indices directly instead of going through RGB
+        if (image.getColorModel() instanceof IndexColorModel && image.getSampleModel().getSampleSize(0) == 1) {
+            IndexColorModel palette = (IndexColorModel) image.getColorModel();
+            int zero = palette.getRed(0);
+            int one = palette.getRed(1);
+            int[] samples = image.getRaster().getSamples(0, 0, width, height, 0, (int[]) null);
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = samples[i] == 0 ? zero : one;
+            }
+            return samples;
+        }
+
+        int[] pixels = readRGB(image);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (pixels[i] >> 16) & 0xFF;
+        }
+        return pixels;
+    }
+
+    /**
+     * Reads the luminance of every pixel, weighting the RGB channels (ITU-R BT.601).
+     * Gray and bilevel images are read directly.
+     *
+     * @param image The source image.
+     * @return Row-major luminance values in the range 0-255.
+     */
+    public static int[] readLuminance(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_BYTE_GRAY
+            || (image.getColorModel() instanceof IndexColorModel && image.getSampleModel().getSampleSize(0) == 1)) {
+            return readGray(image);
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = readRGB(image);
+        for (int i = 0; i < pixels.length; i++) {
+            int rgb = pixels[i];
+            int r = (rgb >> 16) & 0xFF;
+            int g = (rgb >> 8) & 0xFF;
+            int b = rgb & 0xFF;
+            pixels[i] = (77 * r + 150 * g + 29 * b + 128) >> 8;
+        }
+        return pixels;
+    }
+
+    /**
+     * Reads the packed RGB value of every pixel. Packed int images, which is what the TIFF
+     * reader returns for gray and colour pages, are copied from the raster instead of being
+     * converted pixel by pixel through the colour model.
+     */
+    private static int[] readRGB(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_INT_ARGB) {
+            return (int[]) image.getRaster().getDataElements(0, 0, width, height, null);
+        }
+        return image.getRGB(0, 0, width, height, null, 0, width);
+    }
+
+    /**
+     * Wraps a gray plane into a TYPE_BYTE_GRAY image.
+     */
+    public static BufferedImage toGrayImage(int[] plane, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        image.getRaster().setSamples(0, 0, width, height, 0, plane);
+        return image;
+    }
+
+    /**
+     * Wraps a plane of 0 (black) / 255 (white) values into a TYPE_BYTE_BINARY image.
+     */
+    public static BufferedImage toBinaryImage(int[] plane, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+        WritableRaster raster = image.getRaster();
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                row[x] = plane[y * width + x] > 127 ? 1 : 0;
+            }
+            raster.setSamples(0, y, width, 1, 0, row);
+        }
+        return image;
+    }
+}
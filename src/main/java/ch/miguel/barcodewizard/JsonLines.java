@@ -0,0 +1,92 @@
+package ch.miguel.barcodewizard;
+
+import java.awt.Rectangle;
+
+/**
+ * Formats extraction results as single-line JSON objects for the command line.
+ */
+public class JsonLines {
+
+    /**
+     * Formats the result for one input, e.g.
+     * {"source":"a.tif","status":"DECODED","data":"0123","tier":"GLOBAL","boundingBox":[10,20,90,90],"elapsedMs":42}
+     */
+    public static String result(String source, ExtractionResult result, long elapsedMillis) {
+        StringBuilder json = new StringBuilder(128);
+        json.append("{\"source\":").append(quote(source));
+        json.append(",\"status\":").append(quote(result.getStatus().name()));
+        if (result.getData() != null) {
+            json.append(",\"data\":").append(quote(result.getData()));
+        }
+        if (result.getTier() != null) {
+            json.append(",\"tier\":").append(quote(result.getTier().name()));
+        }
+        if (result.getRegion() != null) {
+            appendBoundingBox(json, result.getRegion().getBoundingBox());
+        }
+        if (result.getStage() != null) {
+            json.append(",\"stage\":").append(quote(result.getStage()));
+        }
+        json.append(",\"elapsedMs\":").append(elapsedMillis).append('}');
+        return json.toString();
+    }
+
+    /**
+     * Formats a match from a {@link ResultStore}, e.g.
+     * {"data":"0123","source":"a.tif","page":0,"boundingBox":[10,20,90,90]}
+     */
+    public static String stored(StoredResult result) {
+        StringBuilder json = new StringBuilder(128);
+        json.append("{\"data\":").append(quote(result.getData()));
+        json.append(",\"source\":").append(quote(result.getSource()));
+        json.append(",\"page\":").append(result.getPage());
+        appendBoundingBox(json, result.getBoundingBox());
+        return json.append('}').toString();
+    }
+
+    /**
+     * Formats an input that could not be processed at all.
+     */
+    public static String error(String source, String message) {
+        return "{\"source\":" + quote(source) + ",\"status\":\"ERROR\",\"error\":" + quote(message) + "}";
+    }
+
+    private static void appendBoundingBox(StringBuilder json, Rectangle box) {
+        if (box != null) {
+            json.append(",\"boundingBox\":[")
+                .append(box.x).append(',').append(box.y).append(',')
+                .append(box.width).append(',').append(box.height).append(']');
+        }
+    }
+
+    static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\r':
+                    quoted.append("\\r");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
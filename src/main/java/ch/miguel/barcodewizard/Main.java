@@ -1,28 +1,309 @@
 package ch.miguel.barcodewizard;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * Command line entry point. Decodes the given files and prints one JSON object per file
+ * on stdout; all other output goes to stderr.
+ */
 public class Main {
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+        "Usage: barcode-wizard [options] [file|glob|- ...]",
+        "",
+        "Decodes the Data Matrix in each image and prints one JSON line per input.",
+        "",
+        "  -                   read one TIFF from stdin",
+        "  --batch             read file paths from stdin, one per line, until EOF",
+        "  --mode <mode>       adaptive, global or cascade (default: cascade)",
+        "  --timeout <ms>      time budget per file (default: none)",
+        "  --store <dir>       append decoded results to the result store in <dir>",
+        "  --find <data>       print the stored occurrences of <data> from --store and exit",
+        "  --debug-images      write the intermediate images to the working directory",
+        "  --warmup            decode generated pages and exit, e.g. to train an AppCDS archive",
+        "  --help              show this help");
+
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_NOT_DECODED = 1;
+    private static final int EXIT_USAGE = 2;
+
+    private static final String WARMUP_CONTENT = "12345678901234";
+    // 6 pixels per module at the generator's 200 dpi
+    private static final double WARMUP_MODULE_SIZE = 0.762;
+
     public static void main(String[] args) {
-        var extractor = new CustomDataMatrixExtractor();
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        // Keep stdout for JSON lines only; the pipeline's progress messages go to stderr
+        PrintStream out = new PrintStream(System.out, true, StandardCharsets.UTF_8);
+        System.setOut(System.err);
+        System.exit(run(args, System.in, out));
+    }
 
-        // Load the TIFF image as a byte array
-        byte[] tiffByteArray = null;
+    /**
+     * Runs the command line.
+     *
+     * @param args The command line arguments.
+     * @param in Source of the "-" input and of the --batch paths.
+     * @param out Receives the JSON lines.
+     * @return The process exit code.
+     */
+    static int run(String[] args, InputStream in, PrintStream out) {
+        BinarizationMode mode = BinarizationMode.CASCADE;
+        Duration timeout = null;
+        boolean batch = false;
+        boolean warmup = false;
+        boolean debugImages = false;
+        Path storeDirectory = null;
+        String find = null;
+        List<String> inputs = new ArrayList<>();
 
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            try {
+                switch (arg) {
+                    case "--help":
+                    case "-h":
+                        out.println(USAGE);
+                        return EXIT_OK;
+                    case "--batch":
+                        batch = true;
+                        break;
+                    case "--warmup":
+                        warmup = true;
+                        break;
+                    case "--debug-images":
+                        debugImages = true;
+                        break;
+                    case "--mode":
+                        mode = BinarizationMode.valueOf(requireValue(args, ++i, arg).toUpperCase());
+                        break;
+                    case "--store":
+                        storeDirectory = Paths.get(requireValue(args, ++i, arg));
+                        break;
+                    case "--find":
+                        find = requireValue(args, ++i, arg);
+                        break;
+                    case "--timeout":
+                        timeout = Duration.ofMillis(Long.parseLong(requireValue(args, ++i, arg)));
+                        break;
+                    default:
+                        if (arg.startsWith("--")) {
+                            throw new IllegalArgumentException("Unknown option " + arg);
+                        }
+                        inputs.add(arg);
+                }
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                System.err.println(USAGE);
+                return EXIT_USAGE;
+            }
+        }
+
+        DebuggingUtils.setDebugImagesEnabled(debugImages);
+        var extractor = new CustomDataMatrixExtractor(mode);
+
+        if (warmup) {
+            return warmUp() ? EXIT_OK : EXIT_NOT_DECODED;
+        }
+        if (find != null && storeDirectory == null) {
+            System.err.println("--find requires --store");
+            return EXIT_USAGE;
+        }
+        if (find == null && !batch && inputs.isEmpty()) {
+            System.err.println(USAGE);
+            return EXIT_USAGE;
+        }
+
+        ResultStore store = null;
         try {
-            tiffByteArray = Files.readAllBytes(Paths.get("src\\main\\resources\\images\\image2.tif"));
+            if (storeDirectory != null) {
+                // Lookups never rebuild or truncate the files, so they are safe next to a running writer
+                store = find != null ? ResultStore.openReadOnly(storeDirectory) : ResultStore.open(storeDirectory);
+            }
+            if (find != null) {
+                List<StoredResult> matches = store.find(find);
+                for (StoredResult match : matches) {
+                    out.println(JsonLines.stored(match));
+                }
+                return matches.isEmpty() ? EXIT_NOT_DECODED : EXIT_OK;
+            }
+
+            boolean allDecoded = true;
+            for (String input : inputs) {
+                if ("-".equals(input)) {
+                    allDecoded &= decode(extractor, store, "-", in.readAllBytes(), timeout, out);
+                    continue;
+                }
+                List<Path> files;
+                try {
+                    files = expand(input);
+                } catch (IOException | UncheckedIOException e) {
+                    out.println(JsonLines.error(input, "Cannot list files: " + e.getMessage()));
+                    allDecoded = false;
+                    continue;
+                }
+                if (files.isEmpty()) {
+                    out.println(JsonLines.error(input, "No files match"));
+                    allDecoded = false;
+                }
+                for (Path file : files) {
+                    allDecoded &= decodeFile(extractor, store, file, timeout, out);
+                }
+            }
+
+            // Persistent mode: one warm JVM serves every path piped in
+            if (batch) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isBlank()) {
+                        allDecoded &= decodeFile(extractor, store, Paths.get(line.strip()), timeout, out);
+                    }
+                }
+            }
+            return allDecoded ? EXIT_OK : EXIT_NOT_DECODED;
         } catch (IOException e) {
-            e.printStackTrace();
+            System.err.println("Error reading input: " + e.getMessage());
+            return EXIT_USAGE;
+        } finally {
+            closeStore(store);
         }
+    }
 
-        if (tiffByteArray == null) {
-            System.err.println("Error loading the TIFF image.");
+    private static void closeStore(ResultStore store) {
+        if (store == null) {
             return;
         }
+        try {
+            store.close();
+        } catch (IOException e) {
+            System.err.println("Error closing result store: " + e.getMessage());
+        }
+    }
+
+    private static String requireValue(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
 
-        String data = extractor.extractDataMatrix(tiffByteArray);
-        System.out.println("Data Matrix content: " + data);
+    private static boolean decodeFile(CustomDataMatrixExtractor extractor, ResultStore store, Path file,
+                                      Duration timeout, PrintStream out) {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (IOException e) {
+            out.println(JsonLines.error(file.toString(), "Cannot read file: " + e.getMessage()));
+            return false;
+        }
+        return decode(extractor, store, file.toString(), bytes, timeout, out);
+    }
+
+    private static boolean decode(CustomDataMatrixExtractor extractor, ResultStore store, String source, byte[] bytes,
+                                  Duration timeout, PrintStream out) {
+        long start = System.nanoTime();
+        CancellationToken token = timeout != null ? CancellationToken.withTimeout(timeout) : CancellationToken.create();
+        ExtractionResult result = extractor.extract(bytes, token);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        out.println(JsonLines.result(source, result, elapsedMillis));
+        if (store != null) {
+            try {
+                // Only the first page of a file is decoded
+                store.append(source, 0, result);
+            } catch (IOException e) {
+                System.err.println("Error writing to result store: " + e.getMessage());
+            }
+        }
+        return result.isSuccess();
+    }
+
+    /**
+     * Expands a glob such as "scans/*.tif" or "scans/**.tif"; plain paths are returned as is.
+     * Shells usually expand globs already, this covers quoted patterns and shells that do not.
+     *
+     * @return The matching files in name order; empty if nothing matches.
+     * @throws IOException if the directory to search does not exist or cannot be read.
+     */
+    private static List<Path> expand(String input) throws IOException {
+        int firstWildcard = indexOfWildcard(input);
+        if (firstWildcard < 0) {
+            return List.of(Paths.get(input));
+        }
+
+        // Walk from the deepest directory that contains no wildcard
+        int separator = Math.max(input.lastIndexOf('/', firstWildcard), input.lastIndexOf('\\', firstWildcard));
+        Path base = separator < 0 ? Paths.get(".") : Paths.get(input.substring(0, separator + 1));
+        String pattern = separator < 0 ? input : input.substring(separator + 1);
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+
+        try (Stream<Path> files = Files.walk(base)) {
+            return files
+                .filter(Files::isRegularFile)
+                .filter(file -> matcher.matches(base.relativize(file)))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    private static int indexOfWildcard(String input) {
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes a generated symbol through the global, adaptive and CCITT paths, loading the
+     * classes a real decode needs. Used as the training run for an AppCDS archive.
+     *
+     * @return true if every warm-up page was decoded.
+     */
+    private static boolean warmUp() {
+        try {
+            SyntheticPageGenerator generator = new SyntheticPageGenerator();
+            generator.setModuleSize(WARMUP_MODULE_SIZE);
+            generator.setNoise(4);
+            generator.setMaxRotation(10);
+            SyntheticPage grayPage = generator.generate(WARMUP_CONTENT, new Random(1));
+            generator.setBilevel(true);
+            SyntheticPage bilevelPage = generator.generate(WARMUP_CONTENT, new Random(2));
+
+            boolean decoded = true;
+            for (BinarizationMode mode : new BinarizationMode[] {BinarizationMode.GLOBAL, BinarizationMode.ADAPTIVE}) {
+                decoded &= new CustomDataMatrixExtractor(mode).extract(grayPage.getTiff()).isSuccess();
+            }
+            decoded &= new CustomDataMatrixExtractor(BinarizationMode.CASCADE).extract(bilevelPage.getTiff()).isSuccess();
+            if (!decoded) {
+                System.err.println("Warm-up failed: a generated page was not decoded");
+            }
+            return decoded;
+        } catch (IOException e) {
+            System.err.println("Warm-up failed: " + e.getMessage());
+            return false;
+        }
     }
-}
\ No newline at end of file
+}
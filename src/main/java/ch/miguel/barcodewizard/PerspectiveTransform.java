@@ -0,0 +1,96 @@
+package ch.miguel.barcodewizard;
+
+import java.awt.geom.Point2D;
+
+/**
+ * Projective mapping from the unit square onto an arbitrary quadrilateral.
+ * Symbol space uses (0,0) for the top-left and (1,1) for the bottom-right corner,
+ * so module centres can be sampled regardless of how the symbol is rotated or skewed.
+ */
+public class PerspectiveTransform {
+    private final double a11, a12, a13;
+    private final double a21, a22, a23;
+    private final double a31, a32, a33;
+
+    private PerspectiveTransform(double a11, double a21, double a31,
+                                 double a12, double a22, double a32,
+                                 double a13, double a23, double a33) {
+        this.a11 = a11;
+        this.a12 = a12;
+        this.a13 = a13;
+        this.a21 = a21;
+        this.a22 = a22;
+        this.a23 = a23;
+        this.a31 = a31;
+        this.a32 = a32;
+        this.a33 = a33;
+    }
+
+    /**
+     * Builds the transform mapping the unit square onto the given corners.
+     *
+     * @param topLeft Image position of symbol coordinate (0,0).
+     * @param topRight Image position of symbol coordinate (1,0).
+     * @param bottomRight Image position of symbol coordinate (1,1).
+     * @param bottomLeft Image position of symbol coordinate (0,1).
+     * @return The transform from symbol space to image space.
+     */
+    public static PerspectiveTransform squareToQuadrilateral(Point2D topLeft, Point2D topRight,
+                                                             Point2D bottomRight, Point2D bottomLeft) {
+        double x0 = topLeft.getX(), y0 = topLeft.getY();
+        double x1 = topRight.getX(), y1 = topRight.getY();
+        double x2 = bottomRight.getX(), y2 = bottomRight.getY();
+        double x3 = bottomLeft.getX(), y3 = bottomLeft.getY();
+
+        double dx3 = x0 - x1 + x2 - x3;
+        double dy3 = y0 - y1 + y2 - y3;
+
+        if (dx3 == 0.0 && dy3 == 0.0) {
+            // Parallelogram: the mapping is affine
+            return new PerspectiveTransform(x1 - x0, x2 - x1, x0,
+                                            y1 - y0, y2 - y1, y0,
+                                            0.0, 0.0, 1.0);
+        }
+
+        double dx1 = x1 - x2;
+        double dx2 = x3 - x2;
+        double dy1 = y1 - y2;
+        double dy2 = y3 - y2;
+        double denominator = dx1 * dy2 - dx2 * dy1;
+        double a13 = (dx3 * dy2 - dx2 * dy3) / denominator;
+        double a23 = (dx1 * dy3 - dx3 * dy1) / denominator;
+
+        return new PerspectiveTransform(x1 - x0 + a13 * x1, x3 - x0 + a23 * x3, x0,
+                                        y1 - y0 + a13 * y1, y3 - y0 + a23 * y3, y0,
+                                        a13, a23, 1.0);
+    }
+
+    /**
+     * Maps a point from symbol space to image space.
+     *
+     * @param u Horizontal symbol coordinate (0 = left edge, 1 = right edge).
+     * @param v Vertical symbol coordinate (0 = top edge, 1 = bottom edge).
+     * @return The corresponding image position.
+     */
+    public Point2D.Double transform(double u, double v) {
+        double denominator = a13 * u + a23 * v + a33;
+        double x = (a11 * u + a21 * v + a31) / denominator;
+        double y = (a12 * u + a22 * v + a32) / denominator;
+        return new Point2D.Double(x, y);
+    }
+
+    /**
+     * Maps a point from image space back to symbol space.
+     *
+     * @param x Horizontal image position.
+     * @param y Vertical image position.
+     * @return The symbol coordinates (u, v) of that position.
+     */
+    public Point2D.Double inverseTransform(double x, double y) {
+        // The adjugate inverts the matrix up to a scale factor, which the division cancels
+        double u = (a22 * a33 - a32 * a23) * x + (a31 * a23 - a21 * a33) * y + (a21 * a32 - a31 * a22);
+        double v = (a32 * a13 - a12 * a33) * x + (a11 * a33 - a31 * a13) * y + (a31 * a12 - a11 * a32);
+        double w = (a12 * a23 - a22 * a13) * x + (a21 * a13 - a11 * a23) * y + (a11 * a22 - a21 * a12);
+        return new Point2D.Double(u / w, v / w);
+    }
+}
@@ -0,0 +1,599 @@
+package ch.miguel.barcodewizard;
+
+import java.awt.Rectangle;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Local store of decoded symbols, answering "which file and page contained code X?".
+ * Records are appended to a segment file and never rewritten; an open-addressing hash
+ * index over the decoded content lives in a memory-mapped file, so a lookup reads only the
+ * records whose content hash matches. Appends from batch workers and lookups may run
+ * concurrently. If the index is missing or behind the segment, e.g. after a crash, it is
+ * rebuilt from the segment when the store is opened.
+ * <p>
+ * One process at a time may write: {@link #open} takes an exclusive lock on the segment file.
+ * Other processes read through {@link #openReadOnly}, which never modifies the files and
+ * scans the segment instead of using the index while a writer is active.
+ */
+public class ResultStore implements Closeable {
+
+    public static final String SEGMENT_FILE = "results.seg";
+    public static final String INDEX_FILE = "results.idx";
+
+    private static final int INDEX_MAGIC = 0x444d5849; // "DMXI"
+    private static final int INDEX_VERSION = 1;
+    // magic, version, capacity, entry count, indexed segment length
+    private static final int HEADER_SIZE = 24;
+    private static final int CAPACITY_POSITION = 8;
+    private static final int COUNT_POSITION = 12;
+    private static final int INDEXED_LENGTH_POSITION = 16;
+    // content hash, record offset + 1 (0 marks an empty slot)
+    private static final int SLOT_SIZE = 16;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final double MAX_LOAD = 0.5;
+
+    // payload length, CRC32 of the payload
+    private static final int RECORD_HEADER_SIZE = 8;
+    // data length, source length, page, x, y, width, height
+    private static final int MIN_PAYLOAD_SIZE = 7 * 4;
+
+    private final FileChannel segment;
+    private final FileChannel indexChannel;
+    private final boolean readOnly;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Null for a read-only store that scans the segment
+    private MappedByteBuffer index;
+    private int capacity;
+    private int count;
+    private long segmentLength;
+    private boolean closed;
+
+    private ResultStore(FileChannel segment, FileChannel indexChannel, boolean readOnly) {
+        this.segment = segment;
+        this.indexChannel = indexChannel;
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Opens the store in the given directory for writing, creating it if necessary.
+     *
+     * @throws IOException if another process or another open store is writing to it.
+     */
+    public static ResultStore open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        FileChannel segment = FileChannel.open(directory.resolve(SEGMENT_FILE),
+            StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        FileChannel indexChannel;
+        try {
+            // Held until the channel is closed; the index may be rebuilt and the segment truncated
+            if (!tryLock(segment, false)) {
+                throw new IOException("Result store " + directory + " is in use by another process");
+            }
+            indexChannel = FileChannel.open(directory.resolve(INDEX_FILE),
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        } catch (IOException e) {
+            segment.close();
+            throw e;
+        }
+
+        ResultStore store = new ResultStore(segment, indexChannel, false);
+        try {
+            store.load();
+        } catch (IOException e) {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    /**
+     * Opens an existing store for lookups only. The files are never created, rebuilt or
+     * truncated. While no writer holds the store, the reader keeps it shared-locked and uses
+     * the index if it is up to date; otherwise lookups scan the segment up to its last intact
+     * record, so they also see records appended after opening.
+     *
+     * @throws java.nio.file.NoSuchFileException if the directory contains no store.
+     */
+    public static ResultStore openReadOnly(Path directory) throws IOException {
+        FileChannel segment = FileChannel.open(directory.resolve(SEGMENT_FILE), StandardOpenOption.READ);
+        FileChannel indexChannel = null;
+        try {
+            if (tryLock(segment, true) && Files.exists(directory.resolve(INDEX_FILE))) {
+                indexChannel = FileChannel.open(directory.resolve(INDEX_FILE), StandardOpenOption.READ);
+            }
+        } catch (IOException e) {
+            segment.close();
+            throw e;
+        }
+
+        ResultStore store = new ResultStore(segment, indexChannel, true);
+        try {
+            if (indexChannel != null) {
+                store.index = store.mapValidIndex(FileChannel.MapMode.READ_ONLY);
+                if (store.index != null) {
+                    store.count = store.index.getInt(COUNT_POSITION);
+                }
+            }
+        } catch (IOException e) {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    /**
+     * Returns true if the lock was acquired; false if another process or another channel
+     * of this process holds a conflicting lock.
+     */
+    private static boolean tryLock(FileChannel channel, boolean shared) throws IOException {
+        try {
+            return channel.tryLock(0, Long.MAX_VALUE, shared) != null;
+        } catch (OverlappingFileLockException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Appends a decoded symbol.
+     *
+     * @return The offset of the new record in the segment file.
+     */
+    public long append(StoredResult result) throws IOException {
+        byte[] data = result.getData().getBytes(StandardCharsets.UTF_8);
+        byte[] record = encode(data, result);
+        long hash = hash(data);
+
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            ensureWritable();
+            long offset = segmentLength;
+            writeFully(ByteBuffer.wrap(record), offset);
+            segmentLength += record.length;
+
+            if (count + 1 > capacity * MAX_LOAD) {
+                resizeIndex(capacity * 2);
+            }
+            insert(hash, offset);
+            count++;
+            // Written last: a crash before this point leaves the index behind and triggers a rebuild
+            index.putInt(COUNT_POSITION, count);
+            index.putLong(INDEXED_LENGTH_POSITION, segmentLength);
+            return offset;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Appends the result of an extraction if it was decoded.
+     *
+     * @param source The file or stream the page came from.
+     * @param page Zero-based page index within the source.
+     * @return Whether the result was recorded.
+     */
+    public boolean append(String source, int page, ExtractionResult result) throws IOException {
+        if (!result.isSuccess()) {
+            return false;
+        }
+        Rectangle box = result.getRegion() != null ? result.getRegion().getBoundingBox() : null;
+        append(new StoredResult(result.getData(), source, page, box));
+        return true;
+    }
+
+    /**
+     * Returns every recorded occurrence of the given content, in the order they were appended.
+     */
+    public List<StoredResult> find(String data) throws IOException {
+        long hash = hash(data.getBytes(StandardCharsets.UTF_8));
+
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            if (index == null) {
+                return scanFor(data);
+            }
+            long[] offsets = new long[4];
+            int found = 0;
+            int mask = capacity - 1;
+            for (int slot = slotFor(hash, mask); ; slot = (slot + 1) & mask) {
+                int position = HEADER_SIZE + slot * SLOT_SIZE;
+                long storedOffset = index.getLong(position + 8);
+                if (storedOffset == 0) {
+                    break;
+                }
+                if (index.getLong(position) == hash) {
+                    if (found == offsets.length) {
+                        offsets = Arrays.copyOf(offsets, found * 2);
+                    }
+                    offsets[found++] = storedOffset - 1;
+                }
+            }
+
+            // Probe order is not append order once the table has wrapped or grown
+            Arrays.sort(offsets, 0, found);
+            List<StoredResult> matches = new ArrayList<>(found);
+            for (int i = 0; i < found; i++) {
+                StoredResult result = read(offsets[i]);
+                if (result.getData().equals(data)) {
+                    matches.add(result);
+                }
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of recorded symbols.
+     *
+     * @throws UncheckedIOException if a read-only store cannot scan its segment.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            if (index != null) {
+                return count;
+            }
+            int[] records = new int[1];
+            scan((offset, payload) -> records[0]++);
+            return records[0];
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns whether this store was opened with {@link #openReadOnly}.
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Forces the segment and the index to disk.
+     */
+    public void flush() throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            if (readOnly) {
+                return;
+            }
+            segment.force(false);
+            index.force();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (index != null && !readOnly) {
+                    segment.force(false);
+                    index.force();
+                }
+            } finally {
+                // Closing the segment channel releases the file lock
+                segment.close();
+                if (indexChannel != null) {
+                    indexChannel.close();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Result store is closed");
+        }
+    }
+
+    private void ensureWritable() throws IOException {
+        if (readOnly) {
+            throw new IOException("Result store is open read-only");
+        }
+    }
+
+    private void load() throws IOException {
+        segmentLength = segment.size();
+
+        MappedByteBuffer existing = mapValidIndex(FileChannel.MapMode.READ_WRITE);
+        if (existing != null) {
+            index = existing;
+            count = existing.getInt(COUNT_POSITION);
+            return;
+        }
+
+        rebuildIndex();
+    }
+
+    /**
+     * Maps the index file and sets the capacity if its header is intact and it covers the
+     * whole segment.
+     *
+     * @return The mapped index, or null if it is missing, damaged or behind the segment.
+     */
+    private MappedByteBuffer mapValidIndex(FileChannel.MapMode mode) throws IOException {
+        long indexSize = indexChannel.size();
+        if (indexSize < HEADER_SIZE) {
+            return null;
+        }
+        MappedByteBuffer existing = indexChannel.map(mode, 0, indexSize);
+        int storedCapacity = existing.getInt(CAPACITY_POSITION);
+        if (existing.getInt(0) == INDEX_MAGIC
+            && existing.getInt(4) == INDEX_VERSION
+            && storedCapacity > 0 && Integer.bitCount(storedCapacity) == 1
+            && indexSize >= HEADER_SIZE + (long) storedCapacity * SLOT_SIZE
+            && existing.getLong(INDEXED_LENGTH_POSITION) == segment.size()) {
+            capacity = storedCapacity;
+            return existing;
+        }
+        return null;
+    }
+
+    /**
+     * Re-indexes every intact record of the segment, cutting off a torn record at its end.
+     */
+    private void rebuildIndex() throws IOException {
+        IndexEntries entries = new IndexEntries();
+        long offset = scan(entries);
+
+        if (offset < segmentLength) {
+            System.err.println("Result store: discarding " + (segmentLength - offset) + " bytes of incomplete records");
+            segment.truncate(offset);
+            segmentLength = offset;
+        }
+
+        int newCapacity = INITIAL_CAPACITY;
+        while (entries.size > newCapacity * MAX_LOAD) {
+            newCapacity *= 2;
+        }
+        mapEmptyIndex(newCapacity);
+        for (int i = 0; i < entries.size; i++) {
+            insert(entries.hashes[i], entries.offsets[i]);
+        }
+        count = entries.size;
+        index.putInt(COUNT_POSITION, count);
+        index.putLong(INDEXED_LENGTH_POSITION, segmentLength);
+    }
+
+    /**
+     * Finds the given content by reading every intact record of the segment.
+     */
+    private List<StoredResult> scanFor(String data) throws IOException {
+        byte[] content = data.getBytes(StandardCharsets.UTF_8);
+        List<StoredResult> matches = new ArrayList<>();
+        scan((offset, payload) -> {
+            if (Arrays.equals(readBytes(payload), content)) {
+                matches.add(read(offset));
+            }
+        });
+        return matches;
+    }
+
+    /**
+     * Visits the records of the segment in order, stopping at the first incomplete or
+     * damaged one, e.g. a record that a writer is still appending.
+     *
+     * @return The segment offset just past the last intact record.
+     */
+    private long scan(RecordVisitor visitor) throws IOException {
+        long length = segment.size();
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        long offset = 0;
+        while (offset + RECORD_HEADER_SIZE <= length) {
+            header.clear();
+            readFully(header, offset);
+            header.flip();
+            int payloadLength = header.getInt();
+            int checksum = header.getInt();
+            if (payloadLength < MIN_PAYLOAD_SIZE || offset + RECORD_HEADER_SIZE + payloadLength > length) {
+                break;
+            }
+
+            ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+            readFully(payload, offset + RECORD_HEADER_SIZE);
+            if (checksum(payload.array()) != checksum) {
+                break;
+            }
+
+            payload.flip();
+            visitor.visit(offset, payload);
+            offset += RECORD_HEADER_SIZE + payloadLength;
+        }
+        return offset;
+    }
+
+    private interface RecordVisitor {
+        void visit(long offset, ByteBuffer payload) throws IOException;
+    }
+
+    /**
+     * Collects the content hash and offset of every record for a rebuild.
+     */
+    private static class IndexEntries implements RecordVisitor {
+        long[] hashes = new long[INITIAL_CAPACITY];
+        long[] offsets = new long[INITIAL_CAPACITY];
+        int size;
+
+        @Override
+        public void visit(long offset, ByteBuffer payload) {
+            if (size == hashes.length) {
+                hashes = Arrays.copyOf(hashes, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            hashes[size] = hash(readBytes(payload));
+            offsets[size] = offset;
+            size++;
+        }
+    }
+
+    private void resizeIndex(int newCapacity) {
+        long[] hashes = new long[count];
+        long[] offsets = new long[count];
+        int entries = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            int position = HEADER_SIZE + slot * SLOT_SIZE;
+            long storedOffset = index.getLong(position + 8);
+            if (storedOffset != 0) {
+                hashes[entries] = index.getLong(position);
+                offsets[entries] = storedOffset - 1;
+                entries++;
+            }
+        }
+
+        try {
+            mapEmptyIndex(newCapacity);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot grow result index", e);
+        }
+        for (int i = 0; i < entries; i++) {
+            insert(hashes[i], offsets[i]);
+        }
+    }
+
+    private void mapEmptyIndex(int newCapacity) throws IOException {
+        // The file only ever grows, since the previous mapping may still be live and Windows refuses
+        // to truncate a mapped file; after a rebuild it may so end in unused space
+        long indexSize = Math.max(indexChannel.size(), HEADER_SIZE + (long) newCapacity * SLOT_SIZE);
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexSize);
+        // Marks the index as behind until the caller has filled it, before the old slots are cleared
+        index.putLong(INDEXED_LENGTH_POSITION, -1);
+        for (int slot = 0; slot < newCapacity; slot++) {
+            int position = HEADER_SIZE + slot * SLOT_SIZE;
+            index.putLong(position, 0);
+            index.putLong(position + 8, 0);
+        }
+        capacity = newCapacity;
+        index.putInt(0, INDEX_MAGIC);
+        index.putInt(4, INDEX_VERSION);
+        index.putInt(CAPACITY_POSITION, newCapacity);
+        index.putInt(COUNT_POSITION, 0);
+    }
+
+    private void insert(long hash, long offset) {
+        int mask = capacity - 1;
+        int slot = slotFor(hash, mask);
+        while (index.getLong(HEADER_SIZE + slot * SLOT_SIZE + 8) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        int position = HEADER_SIZE + slot * SLOT_SIZE;
+        index.putLong(position, hash);
+        index.putLong(position + 8, offset + 1);
+    }
+
+    private static int slotFor(long hash, int mask) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private StoredResult read(long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        readFully(header, offset);
+        header.flip();
+        int length = header.getInt();
+
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(payload, offset + RECORD_HEADER_SIZE);
+        payload.flip();
+
+        String data = new String(readBytes(payload), StandardCharsets.UTF_8);
+        String source = new String(readBytes(payload), StandardCharsets.UTF_8);
+        int page = payload.getInt();
+        int x = payload.getInt();
+        int y = payload.getInt();
+        int width = payload.getInt();
+        int height = payload.getInt();
+        Rectangle box = width >= 0 ? new Rectangle(x, y, width, height) : null;
+        return new StoredResult(data, source, page, box);
+    }
+
+    private static byte[] encode(byte[] data, StoredResult result) {
+        byte[] source = result.getSource().getBytes(StandardCharsets.UTF_8);
+        Rectangle box = result.getBoundingBox();
+
+        ByteBuffer payload = ByteBuffer.allocate(MIN_PAYLOAD_SIZE + data.length + source.length);
+        payload.putInt(data.length).put(data);
+        payload.putInt(source.length).put(source);
+        payload.putInt(result.getPage());
+        if (box != null) {
+            payload.putInt(box.x).putInt(box.y).putInt(box.width).putInt(box.height);
+        } else {
+            payload.putInt(0).putInt(0).putInt(-1).putInt(-1);
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.capacity());
+        record.putInt(payload.capacity()).putInt(checksum(payload.array())).put(payload.array());
+        return record.array();
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-8 content.
+     */
+    private static long hash(byte[] data) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : data) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += segment.write(buffer, position);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = segment.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of result segment at " + position);
+            }
+            position += read;
+        }
+    }
+}
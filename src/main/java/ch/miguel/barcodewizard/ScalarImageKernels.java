@@ -0,0 +1,169 @@
+package ch.miguel.barcodewizard;
+
+/**
+ * Portable implementation of {@link ImageKernels}, and the fallback for the Vector API backend.
+ */
+public class ScalarImageKernels implements ImageKernels {
+
+    // Separable 1D factor of the 5x5 binomial kernel (the 2D kernel sums to 256)
+    static final int[] BLUR_KERNEL = { 1, 4, 6, 4, 1 };
+
+    @Override
+    public void gaussianBlur(int[] src, int[] dst, int width, int height) {
+        if (width < 5 || height < 5) {
+            return;
+        }
+        int[] vertical = new int[width * height];
+
+        // Vertical pass
+        for (int y = 2; y < height - 2; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                vertical[row + x] = src[row - 2 * width + x]
+                    + 4 * src[row - width + x]
+                    + 6 * src[row + x]
+                    + 4 * src[row + width + x]
+                    + src[row + 2 * width + x];
+            }
+        }
+
+        // Horizontal pass; the integer sums match the full 2D convolution exactly
+        for (int y = 2; y < height - 2; y++) {
+            blurRow(vertical, dst, y * width, 2, width - 2);
+        }
+    }
+
+    void blurRow(int[] vertical, int[] dst, int row, int fromX, int toX) {
+        for (int x = fromX; x < toX; x++) {
+            int i = row + x;
+            int sum = vertical[i - 2] + 4 * vertical[i - 1] + 6 * vertical[i] + 4 * vertical[i + 1] + vertical[i + 2];
+            dst[i] = sum >> 8;
+        }
+    }
+
+    @Override
+    public void adaptiveThreshold(int[] src, int[] dst, int width, int height, int blockSize, int c) {
+        int[] integral = integralImage(src, width, height);
+        int radius = blockSize / 2;
+
+        for (int y = 0; y < height; y++) {
+            thresholdRow(src, dst, integral, width, height, y, radius, c, 0, width);
+        }
+    }
+
+    /**
+     * Builds a (width + 1) x (height + 1) summed-area table. Sums may wrap around on very
+     * large pages, but window sums are differences and come out right modulo 2^32.
+     */
+    static int[] integralImage(int[] src, int width, int height) {
+        int stride = width + 1;
+        int[] integral = new int[stride * (height + 1)];
+        for (int y = 0; y < height; y++) {
+            int rowSum = 0;
+            for (int x = 0; x < width; x++) {
+                rowSum += src[y * width + x];
+                integral[(y + 1) * stride + x + 1] = integral[y * stride + x + 1] + rowSum;
+            }
+        }
+        return integral;
+    }
+
+    void thresholdRow(int[] src, int[] dst, int[] integral, int width, int height,
+                      int y, int radius, int c, int fromX, int toX) {
+        int stride = width + 1;
+        int y1 = Math.max(0, y - radius);
+        int y2 = Math.min(height - 1, y + radius);
+        int top = y1 * stride;
+        int bottom = (y2 + 1) * stride;
+
+        for (int x = fromX; x < toX; x++) {
+            int x1 = Math.max(0, x - radius);
+            int x2 = Math.min(width - 1, x + radius);
+            int sum = integral[bottom + x2 + 1] - integral[top + x2 + 1] - integral[bottom + x1] + integral[top + x1];
+            int count = (x2 - x1 + 1) * (y2 - y1 + 1);
+
+            // gray > sum / count - c, without the division
+            dst[y * width + x] = (src[y * width + x] + c) * count > sum ? 255 : 0;
+        }
+    }
+
+    @Override
+    public int otsuThreshold(int[] src) {
+        int[] histogram = new int[256];
+        for (int value : src) {
+            histogram[value]++;
+        }
+
+        long weightedTotal = 0;
+        for (int level = 0; level < 256; level++) {
+            weightedTotal += (long) level * histogram[level];
+        }
+
+        long darkCount = 0;
+        long darkWeighted = 0;
+        double bestVariance = -1;
+        int bestThreshold = 127;
+
+        for (int level = 0; level < 256; level++) {
+            darkCount += histogram[level];
+            if (darkCount == 0) {
+                continue;
+            }
+            long lightCount = src.length - darkCount;
+            if (lightCount == 0) {
+                break;
+            }
+            darkWeighted += (long) level * histogram[level];
+
+            double darkMean = (double) darkWeighted / darkCount;
+            double lightMean = (double) (weightedTotal - darkWeighted) / lightCount;
+            double variance = (double) darkCount * lightCount * (darkMean - lightMean) * (darkMean - lightMean);
+            if (variance > bestVariance) {
+                bestVariance = variance;
+                bestThreshold = level;
+            }
+        }
+        return bestThreshold;
+    }
+
+    @Override
+    public void threshold(int[] src, int[] dst, int threshold) {
+        thresholdRange(src, dst, threshold, 0, src.length);
+    }
+
+    void thresholdRange(int[] src, int[] dst, int threshold, int from, int to) {
+        for (int i = from; i < to; i++) {
+            dst[i] = src[i] > threshold ? 255 : 0;
+        }
+    }
+
+    @Override
+    public void sobel(int[] src, int[] dst, int width, int height, GradientNorm norm) {
+        for (int y = 1; y < height - 1; y++) {
+            sobelRow(src, dst, width, y, 1, width - 1, norm);
+        }
+    }
+
+    void sobelRow(int[] src, int[] dst, int width, int y, int fromX, int toX, GradientNorm norm) {
+        int row = y * width;
+        for (int x = fromX; x < toX; x++) {
+            int i = row + x;
+            int gx = (src[i - width + 1] + 2 * src[i + 1] + src[i + width + 1])
+                   - (src[i - width - 1] + 2 * src[i - 1] + src[i + width - 1]);
+            int gy = (src[i + width - 1] + 2 * src[i + width] + src[i + width + 1])
+                   - (src[i - width - 1] + 2 * src[i - width] + src[i - width + 1]);
+            dst[i] = magnitude(gx, gy, norm);
+        }
+    }
+
+    static int magnitude(int gx, int gy, GradientNorm norm) {
+        switch (norm) {
+            case L1:
+                return Math.min(255, Math.abs(gx) + Math.abs(gy));
+            case SQUARED:
+                return Math.min(255, gx * gx + gy * gy);
+            default:
+                return (int) Math.min(255, Math.sqrt(gx * gx + gy * gy));
+        }
+    }
+}
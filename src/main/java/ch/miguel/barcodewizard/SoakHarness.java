@@ -0,0 +1,501 @@
+package ch.miguel.barcodewizard;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Runs the extractor on synthetic pages across many threads for a fixed duration and
+ * reports sustained throughput, success rate, heap growth and GC pauses, to catch
+ * leaks and throughput drift that a short benchmark misses. The warm-up runs first in a
+ * pool of its own; the heap baseline is taken after it has finished and a GC. For example:
+ * <pre>
+ * java -cp barcode-wizard.jar:lib/* ch.miguel.barcodewizard.SoakHarness --duration 600 --threads 8 --noise 6 --clutter 20
+ * </pre>
+ * A page counts as decoded when the extractor's content equals what the decoder reads
+ * from the rendered module grid, so the rate measures locating and sampling. The pipeline's
+ * standard output is discarded while the harness runs; its error output is counted and, with
+ * --error-log, written to a file.
+ */
+public class SoakHarness {
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+        "Usage: SoakHarness [options]",
+        "",
+        "  --duration <s>      measured run time (default: 60)",
+        "  --warmup <s>        unmeasured run time before that (default: 10)",
+        "  --threads <n>       worker threads (default: available processors)",
+        "  --report <s>        interval between progress lines (default: 10)",
+        "  --pages <n>         distinct pages to cycle through (default: 64)",
+        "  --seed <n>          seed for page generation (default: 1)",
+        "  --mode <mode>       adaptive, global or cascade (default: cascade)",
+        "  --timeout <ms>      time budget per page (default: none)",
+        "  --dpi <n>           scan resolution (default: 200)",
+        "  --module-size <mm>  module size (default: 0.75)",
+        "  --contrast <0..1>   print contrast (default: 1)",
+        "  --blur <n>          Gaussian blur passes (default: 0)",
+        "  --noise <sigma>     Gaussian noise in gray levels (default: 0)",
+        "  --rotation <deg>    maximum symbol rotation (default: 0)",
+        "  --clutter <n>       distractors per page (default: 0)",
+        "  --bilevel           write CCITT G4 pages instead of grayscale",
+        "  --write-pages <dir> also save the generated pages as TIFF files",
+        "  --error-log <file>  write the pipeline's error output to a file (default: count it only)");
+
+    // Generated contents are digit strings, which the decoder reads back most compactly
+    private static final int MIN_CONTENT_LENGTH = 6;
+    private static final int MAX_CONTENT_LENGTH = 40;
+    private static final long MEGABYTE = 1024 * 1024;
+
+    private final LongAdder pagesProcessed = new LongAdder();
+    private final LongAdder pagesDecoded = new LongAdder();
+    private final LongAdder pagesRead = new LongAdder();
+    private final LongAdder pagesInterrupted = new LongAdder();
+    private final LongAdder pagesFailed = new LongAdder();
+    private final LongAdder errorLines = new LongAdder();
+
+    public static void main(String[] args) throws Exception {
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        System.exit(new SoakHarness().run(args));
+    }
+
+    private int run(String[] args) throws Exception {
+        SyntheticPageGenerator generator = new SyntheticPageGenerator();
+        Duration duration = Duration.ofSeconds(60);
+        Duration warmup = Duration.ofSeconds(10);
+        Duration reportInterval = Duration.ofSeconds(10);
+        int threads = Runtime.getRuntime().availableProcessors();
+        int pageCount = 64;
+        long seed = 1;
+        BinarizationMode mode = BinarizationMode.CASCADE;
+        Duration timeout = null;
+        Path pageDirectory = null;
+        Path errorLog = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--help":
+                    case "-h":
+                        System.out.println(USAGE);
+                        return 0;
+                    case "--duration":
+                        duration = Duration.ofSeconds(Long.parseLong(requireValue(args, ++i, arg)));
+                        break;
+                    case "--warmup":
+                        warmup = Duration.ofSeconds(Long.parseLong(requireValue(args, ++i, arg)));
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(requireValue(args, ++i, arg));
+                        break;
+                    case "--report":
+                        reportInterval = Duration.ofSeconds(Long.parseLong(requireValue(args, ++i, arg)));
+                        break;
+                    case "--pages":
+                        pageCount = Integer.parseInt(requireValue(args, ++i, arg));
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(requireValue(args, ++i, arg));
+                        break;
+                    case "--mode":
+                        mode = BinarizationMode.valueOf(requireValue(args, ++i, arg).toUpperCase());
+                        break;
+                    case "--timeout":
+                        timeout = Duration.ofMillis(Long.parseLong(requireValue(args, ++i, arg)));
+                        break;
+                    case "--dpi":
+                        generator.setDpi(Integer.parseInt(requireValue(args, ++i, arg)));
+                        break;
+                    case "--module-size":
+                        generator.setModuleSize(Double.parseDouble(requireValue(args, ++i, arg)));
+                        break;
+                    case "--contrast":
+                        generator.setContrast(Double.parseDouble(requireValue(args, ++i, arg)));
+                        break;
+                    case "--blur":
+                        generator.setBlurPasses(Integer.parseInt(requireValue(args, ++i, arg)));
+                        break;
+                    case "--noise":
+                        generator.setNoise(Double.parseDouble(requireValue(args, ++i, arg)));
+                        break;
+                    case "--rotation":
+                        generator.setMaxRotation(Double.parseDouble(requireValue(args, ++i, arg)));
+                        break;
+                    case "--clutter":
+                        generator.setClutter(Integer.parseInt(requireValue(args, ++i, arg)));
+                        break;
+                    case "--bilevel":
+                        generator.setBilevel(true);
+                        break;
+                    case "--write-pages":
+                        pageDirectory = Paths.get(requireValue(args, ++i, arg));
+                        break;
+                    case "--error-log":
+                        errorLog = Paths.get(requireValue(args, ++i, arg));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+            if (threads < 1 || pageCount < 1 || reportInterval.isZero() || reportInterval.isNegative()) {
+                throw new IllegalArgumentException("--threads, --pages and --report must be positive");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+
+        // Keep stdout for the report; the pipeline's messages would dominate the run otherwise
+        PrintStream report = new PrintStream(System.out, true, StandardCharsets.UTF_8);
+        OutputStream log = errorLog != null ? new BufferedOutputStream(Files.newOutputStream(errorLog))
+            : OutputStream.nullOutputStream();
+        PrintStream errors = new PrintStream(new LineCountingStream(log, errorLines), false, StandardCharsets.UTF_8);
+        PrintStream originalOut = System.out;
+        PrintStream originalErr = System.err;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        System.setErr(errors);
+        try {
+            List<SyntheticPage> pages = generatePages(generator, pageCount, seed, pageDirectory, report);
+            List<String> expected = expectedContents(pages);
+            var extractor = new CustomDataMatrixExtractor(mode);
+            DebuggingUtils.setDebugImagesEnabled(false);
+
+            report.println("Soak: " + threads + " threads, " + pages.size() + " pages, mode " + mode
+                + ", warm-up " + warmup.toSeconds() + "s, measuring " + duration.toSeconds() + "s");
+            soak(extractor, pages, expected, threads, timeout, warmup, duration, reportInterval, report);
+            report.println("Extractor statistics: " + extractor.getStatistics());
+            if (errorLog != null) {
+                report.println("Error output written to " + errorLog);
+            }
+        } finally {
+            System.setOut(originalOut);
+            System.setErr(originalErr);
+            errors.close();
+        }
+        return 0;
+    }
+
+    private static String requireValue(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    private static List<SyntheticPage> generatePages(SyntheticPageGenerator generator, int count, long seed,
+                                                     Path directory, PrintStream report) throws IOException {
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+
+        Random random = new Random(seed);
+        List<SyntheticPage> pages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = MIN_CONTENT_LENGTH + random.nextInt(MAX_CONTENT_LENGTH - MIN_CONTENT_LENGTH + 1);
+            StringBuilder content = new StringBuilder(length);
+            for (int j = 0; j < length; j++) {
+                content.append((char) ('0' + random.nextInt(10)));
+            }
+
+            SyntheticPage page = generator.generate(content.toString(), random);
+            pages.add(page);
+            if (directory != null) {
+                page.write(directory.resolve(String.format("page-%04d.tif", i)));
+            }
+        }
+        if (directory != null) {
+            report.println("Wrote " + count + " pages to " + directory);
+        }
+        return pages;
+    }
+
+    /**
+     * Returns what the decoder reads from each page's rendered grid, i.e. the content a
+     * perfect locate-and-sample would produce.
+     */
+    private static List<String> expectedContents(List<SyntheticPage> pages) {
+        DataMatrixDecoder decoder = new DataMatrixDecoder();
+        List<String> expected = new ArrayList<>(pages.size());
+        for (SyntheticPage page : pages) {
+            expected.add(decoder.decodeGrid(page.getModules()));
+        }
+        return expected;
+    }
+
+    private void soak(CustomDataMatrixExtractor extractor, List<SyntheticPage> pages, List<String> expected,
+                      int threads, Duration timeout, Duration warmup, Duration duration, Duration reportInterval,
+                      PrintStream report) throws InterruptedException {
+        AtomicLong nextPage = new AtomicLong();
+
+        // Warm up in a pool of its own, so the baseline is taken once no page is in flight
+        if (!warmup.isZero()) {
+            ExecutorService warmupWorkers = startWorkers(extractor, pages, expected, threads, timeout,
+                System.nanoTime() + warmup.toNanos(), nextPage, false);
+            awaitTermination(warmupWorkers, reportInterval);
+        }
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        memory.gc();
+        long heapStart = memory.getHeapMemoryUsage().getUsed();
+        long heapPeak = heapStart;
+        long collectorTimeStart = collectorTime();
+        long errorLinesStart = errorLines.sum();
+        GcPauseListener pauses = GcPauseListener.register();
+
+        long measureStart = System.nanoTime();
+        long end = measureStart + duration.toNanos();
+        ExecutorService workers = startWorkers(extractor, pages, expected, threads, timeout, end, nextPage, true);
+
+        long intervalStart = measureStart;
+        long intervalPages = 0;
+        long now;
+        while ((now = System.nanoTime()) < end) {
+            TimeUnit.NANOSECONDS.sleep(Math.min(intervalStart + reportInterval.toNanos(), end) - now);
+            now = System.nanoTime();
+            if (now - intervalStart < reportInterval.toNanos()) {
+                continue;
+            }
+            long processed = pagesProcessed.sum();
+            long heap = memory.getHeapMemoryUsage().getUsed();
+            heapPeak = Math.max(heapPeak, heap);
+            report.printf("%6ds  %8.1f pages/s  decoded %5.1f%%  heap %5d MB  gc pauses %6d ms%n",
+                (now - measureStart) / 1_000_000_000L,
+                (processed - intervalPages) / ((now - intervalStart) / 1e9),
+                percentage(pagesDecoded.sum(), processed),
+                heap / MEGABYTE,
+                pauses.getTotalMillis());
+            intervalStart = now;
+            intervalPages = processed;
+        }
+
+        // Pages started before the deadline still count; wait for them to finish
+        awaitTermination(workers, reportInterval);
+        long elapsedNanos = System.nanoTime() - measureStart;
+        long collectorTime = collectorTime() - collectorTimeStart;
+        pauses.unregister();
+        heapPeak = Math.max(heapPeak, memory.getHeapMemoryUsage().getUsed());
+        memory.gc();
+        long heapEnd = memory.getHeapMemoryUsage().getUsed();
+        // The pages are part of the baseline; keep them from being collected before the last measurement
+        Reference.reachabilityFence(pages);
+
+        long processed = pagesProcessed.sum();
+        report.println();
+        report.printf("Pages:       %d in %.1fs, %.1f pages/s%n", processed, elapsedNanos / 1e9, processed / (elapsedNanos / 1e9));
+        report.printf("Decoded:     %d (%.2f%%), content returned for %d, interrupted %d, failed %d%n",
+            pagesDecoded.sum(), percentage(pagesDecoded.sum(), processed), pagesRead.sum(), pagesInterrupted.sum(),
+            pagesFailed.sum());
+        report.printf("Errors:      %d lines of pipeline error output%n", errorLines.sum() - errorLinesStart);
+        report.printf("Heap:        %d MB after GC at start, %d MB at end (%+d MB), peak %d MB%n",
+            heapStart / MEGABYTE, heapEnd / MEGABYTE, (heapEnd - heapStart) / MEGABYTE, heapPeak / MEGABYTE);
+        report.printf("GC pauses:   %d, %d ms in total (%.2f%% of run time), longest %d ms%n",
+            pauses.getCount(), pauses.getTotalMillis(), percentage(pauses.getTotalMillis() * 1_000_000L, elapsedNanos),
+            pauses.getLongestMillis());
+        report.printf("GC work:     %d ms collector time, including concurrent phases%n", collectorTime);
+    }
+
+    /**
+     * Starts one worker per thread, each extracting pages in turn until the deadline.
+     *
+     * @param measured Whether the results count towards the report.
+     * @return The pool, already shut down, so it terminates once the last page has finished.
+     */
+    private ExecutorService startWorkers(CustomDataMatrixExtractor extractor, List<SyntheticPage> pages,
+                                         List<String> expected, int threads, Duration timeout, long deadline,
+                                         AtomicLong nextPage, boolean measured) {
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            workers.execute(() -> {
+                while (System.nanoTime() < deadline) {
+                    int index = (int) (nextPage.getAndIncrement() % pages.size());
+                    CancellationToken token = timeout != null ? CancellationToken.withTimeout(timeout) : CancellationToken.create();
+                    ExtractionResult result;
+                    try {
+                        result = extractor.extract(pages.get(index).getTiff(), token);
+                    } catch (RuntimeException e) {
+                        // Counted and logged like the pipeline's own errors; the worker carries on
+                        e.printStackTrace();
+                        if (measured) {
+                            pagesProcessed.increment();
+                            pagesFailed.increment();
+                        }
+                        continue;
+                    }
+                    if (measured) {
+                        record(result, expected.get(index));
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        return workers;
+    }
+
+    private static void awaitTermination(ExecutorService workers, Duration step) throws InterruptedException {
+        while (!workers.awaitTermination(step.toNanos(), TimeUnit.NANOSECONDS)) {
+            // Pages without a timeout may take a while; keep waiting
+        }
+    }
+
+    private void record(ExtractionResult result, String expected) {
+        pagesProcessed.increment();
+        if (result.isInterrupted()) {
+            pagesInterrupted.increment();
+        } else if (result.isSuccess()) {
+            pagesRead.increment();
+            if (result.getData().equals(expected)) {
+                pagesDecoded.increment();
+            }
+        }
+    }
+
+    /**
+     * Passes bytes through to a log and counts the lines written.
+     */
+    private static class LineCountingStream extends OutputStream {
+        private final OutputStream log;
+        private final LongAdder lines;
+
+        LineCountingStream(OutputStream log, LongAdder lines) {
+            this.log = log;
+            this.lines = lines;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (b == '\n') {
+                lines.increment();
+            }
+            log.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '\n') {
+                    lines.increment();
+                }
+            }
+            log.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            log.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            log.close();
+        }
+    }
+
+    private static double percentage(long part, long total) {
+        return total == 0 ? 0 : 100.0 * part / total;
+    }
+
+    /**
+     * Returns the accumulated time of all collectors, as reported by their MXBeans. For
+     * concurrent collectors this includes work done alongside the application, so it is
+     * not pause time.
+     */
+    private static long collectorTime() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+
+    /**
+     * Counts stop-the-world collections from the collectors' notifications. Concurrent cycles
+     * (the "Cycles" and "Concurrent" beans of ZGC, Shenandoah and G1, and "end of GC cycle"
+     * actions) and explicit System.gc() calls are left out.
+     */
+    private static class GcPauseListener implements NotificationListener {
+        private final List<NotificationEmitter> emitters = new ArrayList<>();
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalMillis = new LongAdder();
+        private final AtomicLong longestMillis = new AtomicLong();
+
+        static GcPauseListener register() {
+            GcPauseListener listener = new GcPauseListener();
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (collector instanceof NotificationEmitter) {
+                    NotificationEmitter emitter = (NotificationEmitter) collector;
+                    emitter.addNotificationListener(listener, null, null);
+                    listener.emitters.add(emitter);
+                }
+            }
+            return listener;
+        }
+
+        void unregister() {
+            for (NotificationEmitter emitter : emitters) {
+                try {
+                    emitter.removeNotificationListener(this);
+                } catch (ListenerNotFoundException e) {
+                    // Already removed
+                }
+            }
+        }
+
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                return;
+            }
+            GarbageCollectionNotificationInfo info =
+                GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            if (info.getGcName().contains("Cycles") || info.getGcName().contains("Concurrent")
+                || info.getGcAction().contains("cycle") || "System.gc()".equals(info.getGcCause())) {
+                return;
+            }
+            long duration = info.getGcInfo().getDuration();
+            count.increment();
+            totalMillis.add(duration);
+            longestMillis.accumulateAndGet(duration, Math::max);
+        }
+
+        long getCount() {
+            return count.sum();
+        }
+
+        long getTotalMillis() {
+            return totalMillis.sum();
+        }
+
+        long getLongestMillis() {
+            return longestMillis.get();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package ch.miguel.barcodewizard;
+
+import java.awt.Rectangle;
+
+/**
+ * A decoded symbol as recorded in a {@link ResultStore}: its content and where it was found.
+ */
+public class StoredResult {
+    private final String data;
+    private final String source;
+    private final int page;
+    private final Rectangle boundingBox;
+
+    public StoredResult(String data, String source, int page, Rectangle boundingBox) {
+        this.data = data;
+        this.source = source;
+        this.page = page;
+        this.boundingBox = boundingBox;
+    }
+
+    public String getData() {
+        return data;
+    }
+
+    /**
+     * Returns the file or stream the symbol was decoded from.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the zero-based page index within the source.
+     */
+    public int getPage() {
+        return page;
+    }
+
+    /**
+     * Returns the symbol bounds on the page, or null if they were not recorded.
+     */
+    public Rectangle getBoundingBox() {
+        return boundingBox;
+    }
+
+    @Override
+    public String toString() {
+        return source + "#" + page + " " + data;
+    }
+}
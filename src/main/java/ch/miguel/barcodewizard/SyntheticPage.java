@@ -0,0 +1,55 @@
+package ch.miguel.barcodewizard;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A generated TIFF page together with the ground truth of the symbol rendered on it.
+ */
+public class SyntheticPage {
+    private final String content;
+    private final boolean[][] modules;
+    private final Rectangle boundingBox;
+    private final byte[] tiff;
+
+    public SyntheticPage(String content, boolean[][] modules, Rectangle boundingBox, byte[] tiff) {
+        this.content = content;
+        this.modules = modules;
+        this.boundingBox = boundingBox;
+        this.tiff = tiff;
+    }
+
+    /**
+     * Returns the encoded content.
+     */
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * Returns the rendered module grid indexed as grid[x][y], true for dark modules.
+     */
+    public boolean[][] getModules() {
+        return modules;
+    }
+
+    /**
+     * Returns the bounds of the rendered symbol on the page, without its quiet zone.
+     */
+    public Rectangle getBoundingBox() {
+        return boundingBox;
+    }
+
+    /**
+     * Returns the page as TIFF bytes, ready for {@link CustomDataMatrixExtractor#extract(byte[])}.
+     */
+    public byte[] getTiff() {
+        return tiff;
+    }
+
+    public void write(Path file) throws IOException {
+        Files.write(file, tiff);
+    }
+}
@@ -0,0 +1,307 @@
+package ch.miguel.barcodewizard;
+
+import org.apache.commons.imaging.ImageFormats;
+import org.apache.commons.imaging.ImageWriteException;
+import org.apache.commons.imaging.Imaging;
+import org.apache.commons.imaging.formats.tiff.TiffImageParser;
+import org.apache.commons.imaging.formats.tiff.TiffImagingParameters;
+import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Renders ECC200 symbols onto synthetic scanned pages, with controllable resolution,
+ * module size, contrast, blur, noise, rotation and clutter around the symbol. Pages are
+ * reproducible for a given seed.
+ */
+public class SyntheticPageGenerator {
+
+    private static final double MILLIMETRES_PER_INCH = 25.4;
+    private static final int PAPER = 240;
+    // Quiet zone around the symbol, in modules, kept free of clutter
+    private static final int QUIET_ZONE = 2;
+    // Subsamples per pixel side when rendering the symbol
+    private static final int SUPERSAMPLING = 4;
+    private static final int CLUTTER_ATTEMPTS = 10;
+
+    private final Ecc200Encoder encoder = new Ecc200Encoder();
+    private final ImageKernels kernels = ImageKernels.getDefault();
+
+    private int dpi = 200;
+    private double pageWidth = 100;
+    private double pageHeight = 75;
+    private double moduleSize = 0.75;
+    private double contrast = 1.0;
+    private int blurPasses = 0;
+    private double noise = 0;
+    private double maxRotation = 0;
+    private int clutter = 0;
+    private boolean bilevel = false;
+
+    /**
+     * Sets the scan resolution in dots per inch (default 200).
+     */
+    public void setDpi(int dpi) {
+        this.dpi = dpi;
+    }
+
+    /**
+     * Sets the page size in millimetres (default 100 x 75).
+     */
+    public void setPageSize(double width, double height) {
+        this.pageWidth = width;
+        this.pageHeight = height;
+    }
+
+    /**
+     * Sets the module size in millimetres (default 0.75).
+     */
+    public void setModuleSize(double moduleSize) {
+        this.moduleSize = moduleSize;
+    }
+
+    /**
+     * Sets the print contrast between 0 (ink as light as the paper) and 1 (black ink, the default).
+     */
+    public void setContrast(double contrast) {
+        this.contrast = contrast;
+    }
+
+    /**
+     * Sets how many times the 5x5 Gaussian blur is applied to the page (default 0).
+     */
+    public void setBlurPasses(int blurPasses) {
+        this.blurPasses = blurPasses;
+    }
+
+    /**
+     * Sets the standard deviation of the Gaussian sensor noise in gray levels (default 0).
+     */
+    public void setNoise(double noise) {
+        this.noise = noise;
+    }
+
+    /**
+     * Sets the maximum rotation of the symbol in degrees; each page draws a rotation
+     * uniformly from [-maxRotation, maxRotation] (default 0).
+     */
+    public void setMaxRotation(double maxRotation) {
+        this.maxRotation = maxRotation;
+    }
+
+    /**
+     * Sets the number of distractors drawn around the symbol: text lines, frames and rules (default 0).
+     */
+    public void setClutter(int clutter) {
+        this.clutter = clutter;
+    }
+
+    /**
+     * Writes bilevel CCITT Group 4 pages, as produced by fax and document scanners, instead of
+     * uncompressed grayscale ones (default false).
+     */
+    public void setBilevel(boolean bilevel) {
+        this.bilevel = bilevel;
+    }
+
+    /**
+     * Renders one page containing the given content.
+     *
+     * @param content The content to encode.
+     * @param random Source of the placement, rotation, clutter and noise of the page.
+     * @return The page and its ground truth.
+     * @throws IllegalArgumentException if the symbol does not fit onto the page.
+     */
+    public SyntheticPage generate(String content, Random random) throws IOException {
+        boolean[][] modules = encoder.encode(content);
+        int width = toPixels(pageWidth);
+        int height = toPixels(pageHeight);
+        double modulePixels = moduleSize / MILLIMETRES_PER_INCH * dpi;
+        int ink = (int) Math.round(PAPER * (1 - contrast));
+
+        // Place the symbol so that it and its quiet zone stay on the page at any rotation
+        double side = modules.length * modulePixels;
+        double radius = (side / 2 + QUIET_ZONE * modulePixels) * Math.sqrt(2);
+        if (2 * radius >= width || 2 * radius >= height) {
+            throw new IllegalArgumentException("Symbol of " + modules.length + " modules does not fit onto the page");
+        }
+        double centreX = radius + random.nextDouble() * (width - 2 * radius);
+        double centreY = radius + random.nextDouble() * (height - 2 * radius);
+        double angle = Math.toRadians((random.nextDouble() * 2 - 1) * maxRotation);
+
+        int[] plane = new int[width * height];
+        Arrays.fill(plane, PAPER);
+
+        Rectangle keepOut = new Rectangle((int) (centreX - radius), (int) (centreY - radius),
+            (int) Math.ceil(2 * radius), (int) Math.ceil(2 * radius));
+        for (int i = 0; i < clutter; i++) {
+            drawClutter(plane, width, height, keepOut, ink, random);
+        }
+
+        Rectangle boundingBox = drawSymbol(plane, width, height, modules, modulePixels, centreX, centreY, angle, ink);
+
+        for (int i = 0; i < blurPasses; i++) {
+            int[] blurred = plane.clone();
+            kernels.gaussianBlur(plane, blurred, width, height);
+            plane = blurred;
+        }
+
+        if (noise > 0) {
+            for (int i = 0; i < plane.length; i++) {
+                int value = (int) Math.round(plane[i] + random.nextGaussian() * noise);
+                plane[i] = Math.max(0, Math.min(255, value));
+            }
+        }
+
+        return new SyntheticPage(content, modules, boundingBox, writeTiff(plane, width, height, ink));
+    }
+
+    private int toPixels(double millimetres) {
+        return (int) Math.round(millimetres / MILLIMETRES_PER_INCH * dpi);
+    }
+
+    /**
+     * Draws the symbol with anti-aliased module edges and returns its bounding box.
+     */
+    private static Rectangle drawSymbol(int[] plane, int width, int height, boolean[][] modules, double modulePixels,
+                                        double centreX, double centreY, double angle, int ink) {
+        int size = modules.length;
+        double half = size * modulePixels / 2;
+        double cos = Math.cos(angle);
+        double sin = Math.sin(angle);
+
+        double extent = half * (Math.abs(cos) + Math.abs(sin));
+        int minX = Math.max(0, (int) Math.floor(centreX - extent));
+        int maxX = Math.min(width - 1, (int) Math.ceil(centreX + extent));
+        int minY = Math.max(0, (int) Math.floor(centreY - extent));
+        int maxY = Math.min(height - 1, (int) Math.ceil(centreY + extent));
+
+        int samples = SUPERSAMPLING * SUPERSAMPLING;
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                int dark = 0;
+                for (int sy = 0; sy < SUPERSAMPLING; sy++) {
+                    double dy = y + (sy + 0.5) / SUPERSAMPLING - centreY;
+                    for (int sx = 0; sx < SUPERSAMPLING; sx++) {
+                        double dx = x + (sx + 0.5) / SUPERSAMPLING - centreX;
+                        // Rotate back into symbol space
+                        double moduleX = (dx * cos + dy * sin + half) / modulePixels;
+                        double moduleY = (-dx * sin + dy * cos + half) / modulePixels;
+                        if (moduleX >= 0 && moduleX < size && moduleY >= 0 && moduleY < size
+                            && modules[(int) moduleX][(int) moduleY]) {
+                            dark++;
+                        }
+                    }
+                }
+                if (dark > 0) {
+                    int i = y * width + x;
+                    plane[i] = plane[i] + (ink - plane[i]) * dark / samples;
+                }
+            }
+        }
+        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+
+    /**
+     * Draws one distractor that does not overlap the symbol's quiet zone.
+     */
+    private static void drawClutter(int[] plane, int width, int height, Rectangle keepOut, int ink, Random random) {
+        for (int attempt = 0; attempt < CLUTTER_ATTEMPTS; attempt++) {
+            int kind = random.nextInt(3);
+            int x = random.nextInt(width);
+            int y = random.nextInt(height);
+            Rectangle bounds;
+            switch (kind) {
+                case 0:
+                    // Line of text: glyph-sized blocks of varying width and height
+                    int glyphHeight = 8 + random.nextInt(16);
+                    bounds = new Rectangle(x, y, glyphHeight * (4 + random.nextInt(20)), glyphHeight);
+                    break;
+                case 1:
+                    // Frame
+                    bounds = new Rectangle(x, y, 20 + random.nextInt(width / 3), 20 + random.nextInt(height / 3));
+                    break;
+                default:
+                    // Horizontal or vertical rule
+                    int thickness = 1 + random.nextInt(3);
+                    int length = 20 + random.nextInt(Math.max(1, width / 2));
+                    bounds = random.nextBoolean()
+                        ? new Rectangle(x, y, length, thickness)
+                        : new Rectangle(x, y, thickness, length);
+            }
+
+            bounds = bounds.intersection(new Rectangle(0, 0, width, height));
+            if (bounds.isEmpty() || bounds.intersects(keepOut)) {
+                continue;
+            }
+
+            if (kind == 0) {
+                drawText(plane, width, bounds, ink, random);
+            } else if (kind == 1) {
+                // Frames clipped at the page edge can be thinner than their stroke
+                int thickness = Math.min(1 + random.nextInt(3), Math.min(bounds.width, bounds.height));
+                fill(plane, width, new Rectangle(bounds.x, bounds.y, bounds.width, thickness), ink);
+                fill(plane, width, new Rectangle(bounds.x, bounds.y + bounds.height - thickness, bounds.width, thickness), ink);
+                fill(plane, width, new Rectangle(bounds.x, bounds.y, thickness, bounds.height), ink);
+                fill(plane, width, new Rectangle(bounds.x + bounds.width - thickness, bounds.y, thickness, bounds.height), ink);
+            } else {
+                fill(plane, width, bounds, ink);
+            }
+            return;
+        }
+    }
+
+    private static void drawText(int[] plane, int width, Rectangle line, int ink, Random random) {
+        int x = line.x;
+        while (x < line.x + line.width) {
+            int glyphWidth = Math.max(2, line.height / 3 + random.nextInt(Math.max(1, line.height / 3)));
+            int glyphHeight = line.height * (2 + random.nextInt(2)) / 3;
+            int stroke = Math.max(1, line.height / 8);
+            Rectangle glyph = new Rectangle(x, line.y + line.height - glyphHeight, glyphWidth, glyphHeight).intersection(line);
+
+            // A rough letter shape: a vertical stem plus a horizontal bar at a random height
+            fill(plane, width, new Rectangle(glyph.x, glyph.y, stroke, glyph.height), ink);
+            int bar = glyph.y + random.nextInt(Math.max(1, glyph.height - stroke));
+            fill(plane, width, new Rectangle(glyph.x, bar, glyph.width, stroke).intersection(line), ink);
+
+            // Word gaps every few glyphs
+            x += glyphWidth + stroke + (random.nextInt(5) == 0 ? glyphWidth : 0);
+        }
+    }
+
+    private static void fill(int[] plane, int width, Rectangle area, int ink) {
+        if (area.isEmpty()) {
+            return;
+        }
+        for (int y = area.y; y < area.y + area.height; y++) {
+            Arrays.fill(plane, y * width + area.x, y * width + area.x + area.width, ink);
+        }
+    }
+
+    private byte[] writeTiff(int[] plane, int width, int height, int ink) throws IOException {
+        ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+        try {
+            if (bilevel) {
+                // Threshold halfway between paper and ink, as a scanner in bilevel mode would
+                int threshold = (PAPER + ink) / 2;
+                int[] binary = new int[plane.length];
+                kernels.threshold(plane, binary, threshold);
+
+                TiffImagingParameters parameters = new TiffImagingParameters();
+                parameters.setCompression(TiffTagConstants.COMPRESSION_VALUE_T6_GROUP_4_FAX);
+                new TiffImageParser().writeImage(ImagePlanes.toBinaryImage(binary, width, height), tiff, parameters);
+            } else {
+                BufferedImage image = ImagePlanes.toGrayImage(plane, width, height);
+                Imaging.writeImage(image, tiff, ImageFormats.TIFF);
+            }
+        } catch (ImageWriteException e) {
+            throw new IOException("Cannot write synthetic page: " + e.getMessage(), e);
+        }
+        return tiff.toByteArray();
+    }
+}
@@ -0,0 +1,165 @@
+package ch.miguel.barcodewizard;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link ImageKernels} backed by the Vector API. Rows are processed a full vector at a time;
+ * borders and row tails fall back to the scalar loops, so results are identical.
+ * Requires --add-modules jdk.incubator.vector at runtime.
+ */
+public class VectorImageKernels extends ScalarImageKernels {
+
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public void gaussianBlur(int[] src, int[] dst, int width, int height) {
+        if (width < 5 || height < 5) {
+            return;
+        }
+        int[] vertical = new int[width * height];
+        int lanes = INTS.length();
+
+        // Vertical pass
+        for (int y = 2; y < height - 2; y++) {
+            int row = y * width;
+            int x = 0;
+            for (; x <= width - lanes; x += lanes) {
+                IntVector sum = IntVector.fromArray(INTS, src, row - 2 * width + x)
+                    .add(IntVector.fromArray(INTS, src, row - width + x).mul(4))
+                    .add(IntVector.fromArray(INTS, src, row + x).mul(6))
+                    .add(IntVector.fromArray(INTS, src, row + width + x).mul(4))
+                    .add(IntVector.fromArray(INTS, src, row + 2 * width + x));
+                sum.intoArray(vertical, row + x);
+            }
+            for (; x < width; x++) {
+                vertical[row + x] = src[row - 2 * width + x]
+                    + 4 * src[row - width + x]
+                    + 6 * src[row + x]
+                    + 4 * src[row + width + x]
+                    + src[row + 2 * width + x];
+            }
+        }
+
+        // Horizontal pass
+        for (int y = 2; y < height - 2; y++) {
+            int row = y * width;
+            int x = 2;
+            for (; x <= width - 2 - lanes; x += lanes) {
+                int i = row + x;
+                IntVector sum = IntVector.fromArray(INTS, vertical, i - 2)
+                    .add(IntVector.fromArray(INTS, vertical, i - 1).mul(4))
+                    .add(IntVector.fromArray(INTS, vertical, i).mul(6))
+                    .add(IntVector.fromArray(INTS, vertical, i + 1).mul(4))
+                    .add(IntVector.fromArray(INTS, vertical, i + 2));
+                sum.lanewise(VectorOperators.ASHR, 8).intoArray(dst, i);
+            }
+            blurRow(vertical, dst, row, x, width - 2);
+        }
+    }
+
+    @Override
+    public void adaptiveThreshold(int[] src, int[] dst, int width, int height, int blockSize, int c) {
+        int[] integral = integralImage(src, width, height);
+        int radius = blockSize / 2;
+        int stride = width + 1;
+        int lanes = INTS.length();
+
+        // Columns whose window is not clipped horizontally
+        int innerFrom = radius;
+        int innerTo = width - radius;
+
+        for (int y = 0; y < height; y++) {
+            if (innerTo - innerFrom < lanes) {
+                thresholdRow(src, dst, integral, width, height, y, radius, c, 0, width);
+                continue;
+            }
+
+            int y1 = Math.max(0, y - radius);
+            int y2 = Math.min(height - 1, y + radius);
+            int top = y1 * stride;
+            int bottom = (y2 + 1) * stride;
+            int count = (2 * radius + 1) * (y2 - y1 + 1);
+            int row = y * width;
+
+            thresholdRow(src, dst, integral, width, height, y, radius, c, 0, innerFrom);
+
+            int x = innerFrom;
+            for (; x <= innerTo - lanes; x += lanes) {
+                IntVector sum = IntVector.fromArray(INTS, integral, bottom + x + radius + 1)
+                    .sub(IntVector.fromArray(INTS, integral, top + x + radius + 1))
+                    .sub(IntVector.fromArray(INTS, integral, bottom + x - radius))
+                    .add(IntVector.fromArray(INTS, integral, top + x - radius));
+                IntVector scaled = IntVector.fromArray(INTS, src, row + x).add(c).mul(count);
+
+                // gray > sum / count - c, without the division
+                VectorMask<Integer> white = scaled.compare(VectorOperators.GT, sum);
+                IntVector.zero(INTS).blend(255, white).intoArray(dst, row + x);
+            }
+
+            thresholdRow(src, dst, integral, width, height, y, radius, c, x, width);
+        }
+    }
+
+    @Override
+    public void threshold(int[] src, int[] dst, int threshold) {
+        int lanes = INTS.length();
+        int i = 0;
+        for (; i <= src.length - lanes; i += lanes) {
+            VectorMask<Integer> white = IntVector.fromArray(INTS, src, i).compare(VectorOperators.GT, threshold);
+            IntVector.zero(INTS).blend(255, white).intoArray(dst, i);
+        }
+        thresholdRange(src, dst, threshold, i, src.length);
+    }
+
+    @Override
+    public void sobel(int[] src, int[] dst, int width, int height, GradientNorm norm) {
+        int lanes = INTS.length();
+
+        for (int y = 1; y < height - 1; y++) {
+            int row = y * width;
+            int x = 1;
+            for (; x <= width - 1 - lanes; x += lanes) {
+                int i = row + x;
+                IntVector topLeft = IntVector.fromArray(INTS, src, i - width - 1);
+                IntVector topRight = IntVector.fromArray(INTS, src, i - width + 1);
+                IntVector bottomLeft = IntVector.fromArray(INTS, src, i + width - 1);
+                IntVector bottomRight = IntVector.fromArray(INTS, src, i + width + 1);
+
+                IntVector gx = topRight.add(IntVector.fromArray(INTS, src, i + 1).mul(2)).add(bottomRight)
+                    .sub(topLeft.add(IntVector.fromArray(INTS, src, i - 1).mul(2)).add(bottomLeft));
+                IntVector gy = bottomLeft.add(IntVector.fromArray(INTS, src, i + width).mul(2)).add(bottomRight)
+                    .sub(topLeft.add(IntVector.fromArray(INTS, src, i - width).mul(2)).add(topRight));
+
+                magnitude(gx, gy, norm).intoArray(dst, i);
+            }
+            sobelRow(src, dst, width, y, x, width - 1, norm);
+        }
+    }
+
+    private static IntVector magnitude(IntVector gx, IntVector gy, GradientNorm norm) {
+        switch (norm) {
+            case L1:
+                return gx.abs().add(gy.abs()).min(255);
+            case SQUARED:
+                return gx.mul(gx).add(gy.mul(gy)).min(255);
+            default:
+                IntVector squared = gx.mul(gx).add(gy.mul(gy));
+                if (FLOATS.length() != INTS.length()) {
+                    int[] values = squared.toArray();
+                    for (int k = 0; k < values.length; k++) {
+                        values[k] = (int) Math.min(255, Math.sqrt(values[k]));
+                    }
+                    return IntVector.fromArray(INTS, values, 0);
+                }
+                // Squared magnitudes fit exactly in a float, and sqrt is correctly rounded
+                FloatVector root = ((FloatVector) squared.convert(VectorOperators.I2F, 0))
+                    .lanewise(VectorOperators.SQRT);
+                return ((IntVector) root.convert(VectorOperators.F2I, 0)).min(255);
+        }
+    }
+}
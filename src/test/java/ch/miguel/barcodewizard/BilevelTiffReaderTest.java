@@ -0,0 +1,235 @@
+package ch.miguel.barcodewizard;
+
+import org.apache.commons.imaging.ImageFormats;
+import org.apache.commons.imaging.Imaging;
+import org.apache.commons.imaging.common.itu_t4.T4AndT6Compression;
+import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class BilevelTiffReaderTest {
+
+    // Not a multiple of eight, so every row ends in padding bits
+    private static final int WIDTH = 37;
+    private static final int HEIGHT = 20;
+    // Three strips of 8, 8 and 4 rows
+    private static final int ROWS_PER_STRIP = 8;
+
+    private final BilevelTiffReader reader = new BilevelTiffReader();
+
+    @Test
+    void readsMultiStripGroup4() throws Exception {
+        BinaryPlane page = page();
+
+        byte[] tiff = new TiffBuilder(TiffTagConstants.COMPRESSION_VALUE_T6_GROUP_4_FAX).build(page);
+
+        assertSamePixels(page, reader.read(tiff));
+    }
+
+    @Test
+    void readsMultiStripGroup3InOneAndTwoDimensions() throws Exception {
+        BinaryPlane page = page();
+        // T4Options: 1 = two-dimensional coding, 4 = fill bits before each end-of-line code
+        for (int t4Options : new int[] {0, 1, 4, 5}) {
+            TiffBuilder builder = new TiffBuilder(TiffTagConstants.COMPRESSION_VALUE_T4_GROUP_3_FAX);
+            builder.t4Options = t4Options;
+
+            assertSamePixels(page, reader.read(builder.build(page)), "T4Options " + t4Options);
+        }
+    }
+
+    @Test
+    void readsModifiedHuffman() throws Exception {
+        BinaryPlane page = page();
+
+        byte[] tiff = new TiffBuilder(TiffTagConstants.COMPRESSION_VALUE_CCITT_1D).build(page);
+
+        assertSamePixels(page, reader.read(tiff));
+    }
+
+    @Test
+    void reversesTheBitsOfFillOrder2() throws Exception {
+        BinaryPlane page = page();
+        for (int compression : new int[] {TiffTagConstants.COMPRESSION_VALUE_T4_GROUP_3_FAX,
+                                          TiffTagConstants.COMPRESSION_VALUE_T6_GROUP_4_FAX}) {
+            TiffBuilder builder = new TiffBuilder(compression);
+            builder.reversedFillOrder = true;
+
+            assertSamePixels(page, reader.read(builder.build(page)), "compression " + compression);
+        }
+    }
+
+    @Test
+    void readsBlackIsZeroAndWhiteIsZeroAlike() throws Exception {
+        BinaryPlane page = page();
+        TiffBuilder whiteIsZero = new TiffBuilder(TiffTagConstants.COMPRESSION_VALUE_T6_GROUP_4_FAX);
+        TiffBuilder blackIsZero = new TiffBuilder(TiffTagConstants.COMPRESSION_VALUE_T6_GROUP_4_FAX);
+        blackIsZero.blackIsZero = true;
+
+        assertSamePixels(page, reader.read(whiteIsZero.build(page)), "WhiteIsZero");
+        assertSamePixels(page, reader.read(blackIsZero.build(page)), "BlackIsZero");
+    }
+
+    @Test
+    void leavesOtherImagesToTheGeneralPath() throws Exception {
+        BufferedImage gray = ImagePlanes.toGrayImage(new int[WIDTH * HEIGHT], WIDTH, HEIGHT);
+        ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+        Imaging.writeImage(gray, tiff, ImageFormats.TIFF);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(gray, "png", png);
+
+        assertNull(reader.read(tiff.toByteArray()));
+        assertNull(reader.read(png.toByteArray()));
+    }
+
+    /**
+     * Returns a page of random pixels with a few long runs, which the CCITT codes treat differently.
+     */
+    private static BinaryPlane page() {
+        BinaryPlane page = new BinaryPlane(WIDTH, HEIGHT);
+        Random random = new Random(7);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                boolean run = y % 5 == 0 && x > 3 && x < WIDTH - 3;
+                if (run || random.nextInt(3) == 0) {
+                    page.setBlack(x, y);
+                }
+            }
+        }
+        return page;
+    }
+
+    private static void assertSamePixels(BinaryPlane expected, BinaryPlane actual) {
+        assertSamePixels(expected, actual, "");
+    }
+
+    private static void assertSamePixels(BinaryPlane expected, BinaryPlane actual, String message) {
+        assertEquals(expected.getWidth(), actual.getWidth(), message);
+        assertEquals(expected.getHeight(), actual.getHeight(), message);
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.isBlack(x, y), actual.isBlack(x, y), message + " at " + x + "," + y);
+            }
+        }
+    }
+
+    /**
+     * Writes a little-endian, strip-based CCITT TIFF with exactly the tags under test.
+     */
+    private static class TiffBuilder {
+        private final int compression;
+        int t4Options;
+        boolean reversedFillOrder;
+        boolean blackIsZero;
+
+        TiffBuilder(int compression) {
+            this.compression = compression;
+        }
+
+        byte[] build(BinaryPlane page) throws Exception {
+            // The codes describe black runs as 1 bits; under BlackIsZero those are the white pixels
+            byte[] bits = page.getBits().clone();
+            if (blackIsZero) {
+                for (int i = 0; i < bits.length; i++) {
+                    bits[i] = (byte) ~bits[i];
+                }
+            }
+
+            int rowStride = page.getRowStride();
+            List<byte[]> strips = new ArrayList<>();
+            for (int firstRow = 0; firstRow < HEIGHT; firstRow += ROWS_PER_STRIP) {
+                int rows = Math.min(ROWS_PER_STRIP, HEIGHT - firstRow);
+                byte[] rowBits = new byte[rows * rowStride];
+                System.arraycopy(bits, firstRow * rowStride, rowBits, 0, rowBits.length);
+                byte[] strip = compress(rowBits, rows);
+                if (reversedFillOrder) {
+                    for (int i = 0; i < strip.length; i++) {
+                        strip[i] = (byte) (Integer.reverse(strip[i] & 0xFF) >>> 24);
+                    }
+                }
+                strips.add(strip);
+            }
+
+            List<int[]> tags = new ArrayList<>();
+            tags.add(new int[] {TiffTagConstants.TIFF_TAG_IMAGE_WIDTH.tag, WIDTH});
+            tags.add(new int[] {TiffTagConstants.TIFF_TAG_IMAGE_LENGTH.tag, HEIGHT});
+            tags.add(new int[] {TiffTagConstants.TIFF_TAG_BITS_PER_SAMPLE.tag, 1});
+            tags.add(new int[] {TiffTagConstants.TIFF_TAG_COMPRESSION.tag, compression});
+            tags.add(new int[] {TiffTagConstants.TIFF_TAG_PHOTOMETRIC_INTERPRETATION.tag, blackIsZero
+                ? TiffTagConstants.PHOTOMETRIC_INTERPRETATION_VALUE_BLACK_IS_ZERO
+                : TiffTagConstants.PHOTOMETRIC_INTERPRETATION_VALUE_WHITE_IS_ZERO});
+            tags.add(new int[] {TiffTagConstants.TIFF_TAG_FILL_ORDER.tag, reversedFillOrder
+                ? TiffTagConstants.FILL_ORDER_VALUE_REVERSED
+                : TiffTagConstants.FILL_ORDER_VALUE_NORMAL});
+            tags.add(new int[] {TiffTagConstants.TIFF_TAG_STRIP_OFFSETS.tag, -1});
+            tags.add(new int[] {TiffTagConstants.TIFF_TAG_SAMPLES_PER_PIXEL.tag, 1});
+            tags.add(new int[] {TiffTagConstants.TIFF_TAG_ROWS_PER_STRIP.tag, ROWS_PER_STRIP});
+            tags.add(new int[] {TiffTagConstants.TIFF_TAG_STRIP_BYTE_COUNTS.tag, -1});
+            if (compression == TiffTagConstants.COMPRESSION_VALUE_T4_GROUP_3_FAX) {
+                tags.add(new int[] {TiffTagConstants.TIFF_TAG_T4_OPTIONS.tag, t4Options});
+            }
+
+            // Header, directory, then the strip offset and count arrays, then the strips
+            int directoryEnd = 8 + 2 + tags.size() * 12 + 4;
+            int offsetsArray = directoryEnd;
+            int countsArray = offsetsArray + 4 * strips.size();
+            int dataStart = countsArray + 4 * strips.size();
+            int size = dataStart;
+            for (byte[] strip : strips) {
+                size += strip.length;
+            }
+
+            ByteBuffer tiff = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+            tiff.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(8);
+            tiff.putShort((short) tags.size());
+            for (int[] tag : tags) {
+                tiff.putShort((short) tag[0]);
+                if (tag[1] >= 0) {
+                    tiff.putShort((short) 4).putInt(1).putInt(tag[1]); // One LONG value
+                } else {
+                    boolean offsets = tag[0] == TiffTagConstants.TIFF_TAG_STRIP_OFFSETS.tag;
+                    tiff.putShort((short) 4).putInt(strips.size()).putInt(offsets ? offsetsArray : countsArray);
+                }
+            }
+            tiff.putInt(0); // No further directories
+
+            int offset = dataStart;
+            for (byte[] strip : strips) {
+                tiff.putInt(offset);
+                offset += strip.length;
+            }
+            for (byte[] strip : strips) {
+                tiff.putInt(strip.length);
+            }
+            for (byte[] strip : strips) {
+                tiff.put(strip);
+            }
+            return tiff.array();
+        }
+
+        private byte[] compress(byte[] rowBits, int rows) throws Exception {
+            if (compression == TiffTagConstants.COMPRESSION_VALUE_CCITT_1D) {
+                return T4AndT6Compression.compressModifiedHuffman(rowBits, WIDTH, rows);
+            }
+            if (compression == TiffTagConstants.COMPRESSION_VALUE_T4_GROUP_3_FAX) {
+                boolean hasFillBits = (t4Options & 4) != 0;
+                if ((t4Options & 1) != 0) {
+                    return T4AndT6Compression.compressT4_2D(rowBits, WIDTH, rows, hasFillBits, rows);
+                }
+                return T4AndT6Compression.compressT4_1D(rowBits, WIDTH, rows, hasFillBits);
+            }
+            return T4AndT6Compression.compressT6(rowBits, WIDTH, rows);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package ch.miguel.barcodewizard;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CancellationTokenTest {
+
+    @Test
+    void passesCheckpointsUntilCancelled() {
+        CancellationToken token = CancellationToken.create();
+        token.checkpoint("blur");
+        token.throwIfCancelled();
+        assertFalse(token.isCancelled());
+        assertEquals("blur", token.getStage());
+
+        token.cancel();
+        assertTrue(token.isCancelled());
+        assertFalse(token.isTimedOut());
+        ExtractionCancelledException e = assertThrows(ExtractionCancelledException.class,
+            () -> token.checkpoint("adaptive threshold"));
+        assertFalse(e.isTimedOut());
+        // The stage that was running when the token was cancelled, not the one about to start
+        assertEquals("blur", e.getStage());
+    }
+
+    @Test
+    void timesOutOnceTheBudgetIsUsedUp() {
+        CancellationToken token = CancellationToken.withTimeout(Duration.ZERO);
+
+        assertTrue(token.isTimedOut());
+        assertTrue(token.isCancelled());
+        ExtractionCancelledException e = assertThrows(ExtractionCancelledException.class,
+            () -> token.checkpoint("grayscale"));
+        assertTrue(e.isTimedOut());
+        assertEquals("start", e.getStage());
+    }
+
+    @Test
+    void passesCheckpointsWithinTheBudget() {
+        CancellationToken token = CancellationToken.withTimeout(Duration.ofDays(1));
+        token.checkpoint("grayscale");
+
+        assertFalse(token.isCancelled());
+        assertEquals("grayscale", token.getStage());
+    }
+
+    @Test
+    void tokensWithoutDeadlineNeverTimeOut() {
+        assertFalse(CancellationToken.create().isTimedOut());
+    }
+}
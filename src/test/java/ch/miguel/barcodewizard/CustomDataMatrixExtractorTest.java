@@ -0,0 +1,225 @@
+package ch.miguel.barcodewizard;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CustomDataMatrixExtractorTest {
+
+    private static final String CONTENT = "12345678901234";
+    private static final int MODULE_PIXELS = 6;
+
+    private static byte[] a4Page;
+
+    private final Ecc200Encoder encoder = new Ecc200Encoder();
+    private final DataMatrixDecoder decoder = new DataMatrixDecoder();
+
+    @Test
+    void countsTheTimingPatternOfSlightlyRotatedSymbols() {
+        // Hard pixel staircases along the rotated top edge used to add spurious timing modules
+        boolean[][] modules = encoder.encode(CONTENT);
+        for (BinarizationMode mode : new BinarizationMode[] {BinarizationMode.GLOBAL, BinarizationMode.ADAPTIVE}) {
+            CustomDataMatrixExtractor extractor = new CustomDataMatrixExtractor(mode);
+            for (double degrees : new double[] {-13, -7, 1, 2, 10, 13}) {
+                ExtractionResult result = extractor.extract(page(modules, degrees));
+                assertEquals(decoder.decodeGrid(modules), result.getData(), mode + " at " + degrees + " degrees");
+            }
+        }
+    }
+
+    @Test
+    void decodesSymbolsAtAnyRotation() {
+        boolean[][] modules = encoder.encode(CONTENT);
+        for (BinarizationMode mode : BinarizationMode.values()) {
+            CustomDataMatrixExtractor extractor = new CustomDataMatrixExtractor(mode);
+            for (int degrees = 0; degrees < 360; degrees += 5) {
+                ExtractionResult result = extractor.extract(page(modules, degrees));
+                assertEquals(decoder.decodeGrid(modules), result.getData(), mode + " at " + degrees + " degrees");
+            }
+        }
+    }
+
+    @Test
+    void reportsAnExpiredBudgetAsTimedOut() throws Exception {
+        CustomDataMatrixExtractor extractor = new CustomDataMatrixExtractor(BinarizationMode.CASCADE);
+
+        ExtractionResult result = extractor.extract(a4Page(), CancellationToken.withTimeout(Duration.ZERO));
+        assertEquals(ExtractionStatus.TIMED_OUT, result.getStatus());
+        assertNull(result.getData());
+        assertEquals(1, extractor.getStatistics().getInterruptions());
+    }
+
+    @Test
+    void reportsACancelledTokenAsCancelled() throws Exception {
+        CustomDataMatrixExtractor extractor = new CustomDataMatrixExtractor(BinarizationMode.CASCADE);
+        CancellationToken token = CancellationToken.create();
+        token.cancel();
+
+        ExtractionResult result = extractor.extract(a4Page(), token);
+        assertEquals(ExtractionStatus.CANCELLED, result.getStatus());
+        assertTrue(result.isInterrupted());
+    }
+
+    @Test
+    void stopsInsideThePipelineWhenCancelled() throws Exception {
+        CustomDataMatrixExtractor extractor = new CustomDataMatrixExtractor(BinarizationMode.ADAPTIVE);
+        CancellingToken token = new CancellingToken("contour search");
+
+        ExtractionResult result = extractor.extract(a4Page(), token);
+        assertEquals(ExtractionStatus.CANCELLED, result.getStatus());
+        assertEquals("contour search", result.getStage());
+        // The pixel loops check the token as they go, so the next stage is never reached
+        assertEquals("contour search", token.stages.get(token.stages.size() - 1));
+    }
+
+    @Test
+    void cancellingAQueuedFutureSkipsTheExtraction() throws Exception {
+        CustomDataMatrixExtractor extractor = new CustomDataMatrixExtractor(BinarizationMode.CASCADE);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch blocked = new CountDownLatch(1);
+        try {
+            // Keep the worker busy so the extraction is still queued when it is cancelled
+            executor.execute(() -> awaitQuietly(blocked));
+            CompletableFuture<ExtractionResult> future = extractor.extractAsync(a4Page(), Duration.ofMinutes(1), executor);
+            assertTrue(future.cancel(true));
+            blocked.countDown();
+
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+            assertEquals(0, extractor.getStatistics().getInterruptions() + extractor.getStatistics().getFailures());
+        } finally {
+            blocked.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void cancellingARunningFutureStopsTheExtraction() throws Exception {
+        CustomDataMatrixExtractor extractor = new CustomDataMatrixExtractor(BinarizationMode.ADAPTIVE);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        CancellationToken token = new CancellationToken() {
+            @Override
+            public void checkpoint(String stage) {
+                super.checkpoint(stage);
+                if (stage.equals("contour search")) {
+                    // Hold the worker inside the pipeline until the future has been cancelled
+                    running.countDown();
+                    awaitQuietly(cancelled);
+                }
+            }
+        };
+        try {
+            CompletableFuture<ExtractionResult> future = extractor.extractAsync(a4Page(), token, executor);
+            assertTrue(running.await(30, TimeUnit.SECONDS));
+            assertTrue(future.cancel(true));
+            assertTrue(token.isCancelled());
+            cancelled.countDown();
+
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+            // The worker is freed at the next check instead of finishing the page
+            assertEquals(1, extractor.getStatistics().getInterruptions());
+        } finally {
+            cancelled.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void completesTheFutureWhenTheBudgetIsUsedUp() throws Exception {
+        CustomDataMatrixExtractor extractor = new CustomDataMatrixExtractor(BinarizationMode.CASCADE);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ExtractionResult result = extractor.extractAsync(a4Page(), Duration.ZERO, executor)
+                .get(30, TimeUnit.SECONDS);
+            assertEquals(ExtractionStatus.TIMED_OUT, result.getStatus());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns a cluttered A4 page, generated once for all tests.
+     */
+    private static synchronized byte[] a4Page() throws Exception {
+        if (a4Page == null) {
+            SyntheticPageGenerator generator = new SyntheticPageGenerator();
+            generator.setPageSize(210, 297);
+            generator.setModuleSize(0.762);
+            generator.setClutter(20);
+            a4Page = generator.generate(CONTENT, new Random(3)).getTiff();
+        }
+        return a4Page;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Token that cancels itself once the pipeline enters the given stage.
+     */
+    private static class CancellingToken extends CancellationToken {
+        private final String cancelAt;
+        private final List<String> stages = new ArrayList<>();
+
+        CancellingToken(String cancelAt) {
+            this.cancelAt = cancelAt;
+        }
+
+        @Override
+        public void checkpoint(String stage) {
+            stages.add(stage);
+            super.checkpoint(stage);
+            if (stage.equals(cancelAt)) {
+                cancel();
+            }
+        }
+    }
+
+    /**
+     * Renders the symbol without anti-aliasing, rotated about its centre, on a light gray page.
+     */
+    private static BufferedImage page(boolean[][] modules, double degrees) {
+        int width = 400;
+        int height = 300;
+        int side = modules.length * MODULE_PIXELS;
+        double centreX = 150;
+        double centreY = 150;
+        double cos = Math.cos(Math.toRadians(degrees));
+        double sin = Math.sin(Math.toRadians(degrees));
+
+        int[] plane = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double dx = x + 0.5 - centreX;
+                double dy = y + 0.5 - centreY;
+                double symbolX = dx * cos + dy * sin + side / 2.0;
+                double symbolY = -dx * sin + dy * cos + side / 2.0;
+                boolean dark = symbolX >= 0 && symbolX < side && symbolY >= 0 && symbolY < side
+                    && modules[(int) symbolX / MODULE_PIXELS][(int) symbolY / MODULE_PIXELS];
+                plane[y * width + x] = dark ? 0 : 230;
+            }
+        }
+        return ImagePlanes.toGrayImage(plane, width, height);
+    }
+}
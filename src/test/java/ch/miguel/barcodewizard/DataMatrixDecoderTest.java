@@ -0,0 +1,73 @@
+package ch.miguel.barcodewizard;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DataMatrixDecoderTest {
+
+    private static final int MODULE_PIXELS = 8;
+    private static final int MARGIN = 16;
+
+    private final Ecc200Encoder encoder = new Ecc200Encoder();
+    private final DataMatrixDecoder decoder = new DataMatrixDecoder();
+
+    @Test
+    void countsNoPatternErrorsOnAnEncodedSymbol() {
+        assertEquals(0, DataMatrixDecoder.patternErrors(encoder.encode("1234567890")));
+    }
+
+    @Test
+    void countsMisreadFinderAndTimingModules() {
+        boolean[][] grid = encoder.encode("1234567890");
+        int size = grid.length;
+        grid[0][3] = false;
+        grid[4][size - 1] = false;
+        grid[1][0] = true;
+        grid[size - 1][2] = true;
+
+        assertEquals(4, DataMatrixDecoder.patternErrors(grid));
+    }
+
+    @Test
+    void decodesARenderedSymbol() {
+        boolean[][] modules = encoder.encode("1234567890");
+
+        assertEquals(decoder.decodeGrid(modules), decoder.decode(render(modules)));
+    }
+
+    @Test
+    void rejectsSymbolsWhoseFinderPatternDoesNotSampleBack() {
+        // A symbol with intact timing but a blank finder L reads as garbage, not as a code
+        boolean[][] modules = encoder.encode("1234567890");
+        int size = modules.length;
+        for (int i = 0; i < size - 1; i++) {
+            modules[0][i] = false;
+            modules[i + 1][size - 1] = false;
+        }
+
+        assertNull(decoder.decode(render(modules)));
+    }
+
+    private static DataMatrixRegion render(boolean[][] modules) {
+        int side = modules.length * MODULE_PIXELS;
+        int width = side + 2 * MARGIN;
+        int[] plane = new int[width * width];
+        Arrays.fill(plane, 255);
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                if (modules[x / MODULE_PIXELS][y / MODULE_PIXELS]) {
+                    plane[(y + MARGIN) * width + x + MARGIN] = 0;
+                }
+            }
+        }
+
+        DataMatrixRegion region = new DataMatrixRegion(new Rectangle(MARGIN, MARGIN, side, side));
+        region.setImage(ImagePlanes.toBinaryImage(plane, width, width));
+        return region;
+    }
+}
@@ -0,0 +1,122 @@
+package ch.miguel.barcodewizard;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DataMatrixLocatorTest {
+
+    private static final String CONTENT = "12345678901234";
+    private static final int MODULE_PIXELS = 6;
+    // The located corners lie on the pixel grid, about a pixel inside the edge contour
+    private static final double CORNER_TOLERANCE = 3;
+
+    private final Ecc200Encoder encoder = new Ecc200Encoder();
+    private final DataMatrixLocator locator = new DataMatrixLocator();
+
+    @Test
+    void findsTheTopRightCornerOfASymbolSeenInPerspective() {
+        boolean[][] modules = encoder.encode(CONTENT);
+        for (int degrees = 0; degrees < 360; degrees += 15) {
+            Point2D.Double[] corners = keystone(modules.length * MODULE_PIXELS, 0.15, degrees);
+
+            DataMatrixRegion region = locator.locateDataMatrix(render(modules, corners));
+            assertNotNull(region, "at " + degrees + " degrees");
+            double error = region.getCorners()[1].distance(corners[1]);
+            assertTrue(error <= CORNER_TOLERANCE, "top-right corner " + error + " px off at " + degrees + " degrees");
+        }
+    }
+
+    @Test
+    void completesTheParallelogramOfAnUndistortedSymbol() {
+        boolean[][] modules = encoder.encode(CONTENT);
+        for (int degrees = 0; degrees < 360; degrees += 15) {
+            Point2D.Double[] corners = keystone(modules.length * MODULE_PIXELS, 0, degrees);
+
+            Point2D.Double[] located = locator.locateDataMatrix(render(modules, corners)).getCorners();
+            assertEquals(located[0].x + located[2].x - located[3].x, located[1].x, 1e-9, "at " + degrees + " degrees");
+            assertEquals(located[0].y + located[2].y - located[3].y, located[1].y, 1e-9, "at " + degrees + " degrees");
+        }
+    }
+
+    @Test
+    void locatesTheSameCornersInAPackedPlane() {
+        boolean[][] modules = encoder.encode(CONTENT);
+        for (int degrees = 0; degrees < 360; degrees += 15) {
+            BufferedImage page = render(modules, keystone(modules.length * MODULE_PIXELS, 0.15, degrees));
+            BinaryPlane plane = new BinaryPlane(page.getWidth(), page.getHeight());
+            int[] gray = ImagePlanes.readGray(page);
+            for (int i = 0; i < gray.length; i++) {
+                if (gray[i] == 0) {
+                    plane.setBlack(i % page.getWidth(), i / page.getWidth());
+                }
+            }
+
+            Point2D.Double[] expected = locator.locateDataMatrix(page).getCorners();
+            Point2D.Double[] actual = locator.locateDataMatrix(plane, CancellationToken.create()).getCorners();
+            // The packed edges also mark the few staircase pixels where the Sobel terms cancel
+            for (int i = 0; i < 4; i++) {
+                assertTrue(expected[i].distance(actual[i]) < 0.1, "corner " + i + " at " + degrees + " degrees");
+            }
+        }
+    }
+
+    @Test
+    void decodesASymbolSeenInPerspective() {
+        boolean[][] modules = encoder.encode(CONTENT);
+        DataMatrixDecoder decoder = new DataMatrixDecoder();
+        CustomDataMatrixExtractor extractor = new CustomDataMatrixExtractor(BinarizationMode.GLOBAL);
+        for (int degrees = 0; degrees < 360; degrees += 15) {
+            BufferedImage page = render(modules, keystone(modules.length * MODULE_PIXELS, 0.15, degrees));
+
+            assertEquals(decoder.decodeGrid(modules), extractor.extract(page).getData(), "at " + degrees + " degrees");
+        }
+    }
+
+    /**
+     * Returns the corners, top-left first and clockwise, of a symbol whose top side is shortened
+     * by the given fraction, rotated about the centre of the page.
+     */
+    private static Point2D.Double[] keystone(int side, double shortening, double degrees) {
+        double half = side / 2.0;
+        double top = half * (1 - shortening);
+        double[][] offsets = { {-top, -half}, {top, -half}, {half, half}, {-half, half} };
+        double cos = Math.cos(Math.toRadians(degrees));
+        double sin = Math.sin(Math.toRadians(degrees));
+
+        Point2D.Double[] corners = new Point2D.Double[4];
+        for (int i = 0; i < 4; i++) {
+            corners[i] = new Point2D.Double(
+                150 + offsets[i][0] * cos - offsets[i][1] * sin,
+                150 + offsets[i][0] * sin + offsets[i][1] * cos);
+        }
+        return corners;
+    }
+
+    /**
+     * Renders the symbol without anti-aliasing into the given corners on a light gray page.
+     */
+    private static BufferedImage render(boolean[][] modules, Point2D.Double[] corners) {
+        int width = 300;
+        int height = 300;
+        int size = modules.length;
+        PerspectiveTransform transform = PerspectiveTransform.squareToQuadrilateral(
+            corners[0], corners[1], corners[2], corners[3]);
+
+        int[] plane = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                Point2D.Double symbol = transform.inverseTransform(x + 0.5, y + 0.5);
+                boolean dark = symbol.x >= 0 && symbol.x < 1 && symbol.y >= 0 && symbol.y < 1
+                    && modules[(int) (symbol.x * size)][(int) (symbol.y * size)];
+                plane[y * width + x] = dark ? 0 : 230;
+            }
+        }
+        return ImagePlanes.toGrayImage(plane, width, height);
+    }
+}
@@ -0,0 +1,95 @@
+package ch.miguel.barcodewizard;
+
+import ch.miguel.barcodewizard.DataMatrixStreamDecoder.FrameStatus;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class DataMatrixStreamDecoderTest {
+
+    private static final String CONTENT = "12345678901234";
+    private static final int MODULE_PIXELS = 6;
+    private static final int WHITE = 0xFFFFFF;
+    // Red ink is as bright as the paper in the red channel; only its luminance shows it
+    private static final int RED = 0xFF0000;
+
+    private final Ecc200Encoder encoder = new Ecc200Encoder();
+    private final DataMatrixDecoder decoder = new DataMatrixDecoder();
+
+    @Test
+    void tracksASymbolAcrossFrames() {
+        boolean[][] modules = encoder.encode(CONTENT);
+        DataMatrixStreamDecoder streamDecoder = new DataMatrixStreamDecoder();
+
+        streamDecoder.decodeFrame(frame(modules, 100, 100, 0x000000));
+        assertEquals(FrameStatus.FULL_FRAME, streamDecoder.getLastStatus());
+
+        ExtractionResult result = streamDecoder.decodeFrame(frame(modules, 106, 103, 0x000000));
+        assertEquals(FrameStatus.TRACKED, streamDecoder.getLastStatus());
+        assertEquals(decoder.decodeGrid(modules), result.getData());
+    }
+
+    @Test
+    void detectsMovementOfColouredSymbolsInTheTrackedWindow() {
+        boolean[][] modules = encoder.encode(CONTENT);
+        DataMatrixStreamDecoder streamDecoder = new DataMatrixStreamDecoder();
+
+        ExtractionResult first = streamDecoder.decodeFrame(frame(modules, 100, 100, RED));
+        assertEquals(FrameStatus.FULL_FRAME, streamDecoder.getLastStatus());
+
+        ExtractionResult second = streamDecoder.decodeFrame(frame(modules, 106, 103, RED));
+        assertEquals(FrameStatus.TRACKED, streamDecoder.getLastStatus());
+        assertEquals(decoder.decodeGrid(modules), second.getData());
+        assertEquals(first.getRegion().getBoundingBox().x + 6, second.getRegion().getBoundingBox().x);
+        assertEquals(first.getRegion().getBoundingBox().y + 3, second.getRegion().getBoundingBox().y);
+    }
+    @Test
+    void recordsOneExtractionPerSearchedFrame() {
+        boolean[][] modules = encoder.encode(CONTENT);
+        CustomDataMatrixExtractor extractor = new CustomDataMatrixExtractor(BinarizationMode.CASCADE);
+        DataMatrixStreamDecoder streamDecoder = new DataMatrixStreamDecoder(extractor);
+
+        streamDecoder.decodeFrame(frame(modules, 100, 100, 0x000000));
+        // Losing the symbol runs the tracked and the full-frame search on the same frame
+        streamDecoder.decodeFrame(frame(new boolean[0][0], 100, 100, 0x000000));
+        assertEquals(FrameStatus.NOT_FOUND, streamDecoder.getLastStatus());
+
+        ExtractionStatistics statistics = extractor.getStatistics();
+        assertEquals(1, statistics.getGlobalDecodes() + statistics.getAdaptiveDecodes());
+        assertEquals(1, statistics.getFailures());
+    }
+
+    @Test
+    void rebindsAnUnchangedResultToTheCurrentFrame() {
+        boolean[][] modules = encoder.encode(CONTENT);
+        DataMatrixStreamDecoder streamDecoder = new DataMatrixStreamDecoder();
+
+        ExtractionResult first = streamDecoder.decodeFrame(frame(modules, 100, 100, 0x000000));
+        BufferedImage second = frame(modules, 100, 100, 0x000000);
+        ExtractionResult unchanged = streamDecoder.decodeFrame(second);
+        assertEquals(FrameStatus.UNCHANGED, streamDecoder.getLastStatus());
+
+        assertEquals(first.getData(), unchanged.getData());
+        assertEquals(first.getRegion().getBoundingBox(), unchanged.getRegion().getBoundingBox());
+        assertSame(second, unchanged.getRegion().getImage());
+        assertNotSame(second, first.getRegion().getImage());
+    }
+
+    private static BufferedImage frame(boolean[][] modules, int left, int top, int ink) {
+        BufferedImage frame = new BufferedImage(320, 240, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < frame.getHeight(); y++) {
+            for (int x = 0; x < frame.getWidth(); x++) {
+                int moduleX = Math.floorDiv(x - left, MODULE_PIXELS);
+                int moduleY = Math.floorDiv(y - top, MODULE_PIXELS);
+                boolean dark = moduleX >= 0 && moduleX < modules.length && moduleY >= 0 && moduleY < modules.length
+                    && modules[moduleX][moduleY];
+                frame.setRGB(x, y, dark ? ink : WHITE);
+            }
+        }
+        return frame;
+    }
+}
@@ -0,0 +1,80 @@
+package ch.miguel.barcodewizard;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Ecc200EncoderTest {
+
+    private final Ecc200Encoder encoder = new Ecc200Encoder();
+
+    @Test
+    void encodesTheIsoExample() {
+        // ISO/IEC 16022 worked example: "123456" in a 10x10 symbol
+        assertArrayEquals(new int[] { 142, 164, 186, 114, 25, 5, 88, 102 }, encoder.codewords("123456"));
+    }
+
+    @Test
+    void padsUnusedDataCapacity() {
+        // "A" needs one codeword of the three in a 10x10 symbol: the first pad is 129, the next is scrambled
+        int[] codewords = encoder.codewords("A");
+        assertEquals(66, codewords[0]);
+        assertEquals(129, codewords[1]);
+        assertEquals(129 + (149 * 3) % 253 + 1 - 254, codewords[2]);
+    }
+
+    @Test
+    void placesEveryCodewordBitExactlyOnce() {
+        // mapping matrix size, total codewords
+        int[][] sizes = { { 8, 8 }, { 10, 12 }, { 12, 18 }, { 14, 24 }, { 22, 60 }, { 24, 72 }, { 28, 98 }, { 48, 288 }, { 96, 1152 } };
+        for (int[] size : sizes) {
+            int[][] placement = Ecc200Encoder.placeModules(size[0], size[0]);
+            int[] seen = new int[(size[1] + 1) * 10];
+            int fixed = 0;
+            for (int[] row : placement) {
+                for (int cell : row) {
+                    if (cell < 10) {
+                        fixed++;
+                    } else {
+                        seen[cell]++;
+                    }
+                }
+            }
+            for (int codeword = 1; codeword <= size[1]; codeword++) {
+                for (int bit = 1; bit <= 8; bit++) {
+                    assertEquals(1, seen[codeword * 10 + bit], size[0] + "x" + size[0] + " codeword " + codeword + " bit " + bit);
+                }
+            }
+            assertEquals(size[0] * size[0] - size[1] * 8, fixed);
+        }
+    }
+
+    @Test
+    void drawsFinderAndTimingPatterns() {
+        for (String content : new String[] { "123456", "0123456789012345678901234567890123456789", "Data Matrix" }) {
+            boolean[][] grid = encoder.encode(content);
+            int size = grid.length;
+            for (int i = 0; i < size; i++) {
+                assertTrue(grid[0][i], "left finder at " + i);
+                assertTrue(grid[i][size - 1], "bottom finder at " + i);
+                assertEquals(i % 2 == 0, grid[i][0], "top timing at " + i);
+                assertEquals(i % 2 == 1, grid[size - 1][i], "right timing at " + i);
+            }
+        }
+    }
+
+    @Test
+    void selectsTheSmallestSymbol() {
+        assertEquals(10, encoder.encode("123456").length);
+        assertEquals(12, encoder.encode("1234567890").length);
+        assertEquals(32, encoder.encode("x".repeat(60)).length);
+    }
+
+    @Test
+    void rejectsContentThatDoesNotFit() {
+        assertThrows(IllegalArgumentException.class, () -> encoder.encode("x".repeat(1305)));
+    }
+}
@@ -0,0 +1,79 @@
+package ch.miguel.barcodewizard;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ImageKernelsFactoryTest {
+
+    private static final int WIDTH = 97;
+    private static final int HEIGHT = 61;
+    private static final String VECTOR_TESTS_PROPERTY = "barcodewizard.vectorTests";
+
+    @Test
+    void scalarModeSkipsTheVectorBackend() {
+        assertEquals(ScalarImageKernels.class, ImageKernelsFactory.create("scalar").getClass());
+    }
+
+    @Test
+    void autoModeMatchesTheScalarKernels() {
+        // Whichever backend is picked up, its results must be identical to the scalar ones
+        assertMatchesScalarKernels(ImageKernelsFactory.create("auto"));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = VECTOR_TESTS_PROPERTY, matches = "true")
+    void vectorModeLoadsTheVectorKernels() {
+        // Set by the vector-api profile, which adds the module and the Java 17 classes to the test run
+        ImageKernels vector = ImageKernelsFactory.create("vector");
+
+        assertEquals("ch.miguel.barcodewizard.VectorImageKernels", vector.getClass().getName());
+        assertMatchesScalarKernels(vector);
+    }
+
+    private static void assertMatchesScalarKernels(ImageKernels selected) {
+        ImageKernels scalar = new ScalarImageKernels();
+
+        Random random = new Random(3);
+        int[] gray = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < gray.length; i++) {
+            gray[i] = random.nextInt(256);
+        }
+
+        assertArrayEquals(blur(scalar, gray), blur(selected, gray));
+        assertArrayEquals(adaptiveThreshold(scalar, gray), adaptiveThreshold(selected, gray));
+        assertEquals(scalar.otsuThreshold(gray), selected.otsuThreshold(gray));
+        assertArrayEquals(threshold(scalar, gray), threshold(selected, gray));
+        for (GradientNorm norm : GradientNorm.values()) {
+            assertArrayEquals(sobel(scalar, gray, norm), sobel(selected, gray, norm), norm.name());
+        }
+    }
+
+    private static int[] blur(ImageKernels kernels, int[] gray) {
+        int[] dst = new int[gray.length];
+        kernels.gaussianBlur(gray, dst, WIDTH, HEIGHT);
+        return dst;
+    }
+
+    private static int[] adaptiveThreshold(ImageKernels kernels, int[] gray) {
+        int[] dst = new int[gray.length];
+        kernels.adaptiveThreshold(gray, dst, WIDTH, HEIGHT, 15, 10);
+        return dst;
+    }
+
+    private static int[] threshold(ImageKernels kernels, int[] gray) {
+        int[] dst = new int[gray.length];
+        kernels.threshold(gray, dst, 128);
+        return dst;
+    }
+
+    private static int[] sobel(ImageKernels kernels, int[] gray, GradientNorm norm) {
+        int[] dst = new int[gray.length];
+        kernels.sobel(gray, dst, WIDTH, HEIGHT, norm);
+        return dst;
+    }
+}
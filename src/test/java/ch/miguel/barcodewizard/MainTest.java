@@ -0,0 +1,142 @@
+package ch.miguel.barcodewizard;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MainTest {
+
+    @TempDir
+    Path directory;
+
+    private Path page;
+
+    @BeforeEach
+    void writePage() throws Exception {
+        SyntheticPageGenerator generator = new SyntheticPageGenerator();
+        generator.setModuleSize(0.762);
+        page = directory.resolve("page.tif");
+        generator.generate("12345678901234", new Random(1)).write(page);
+    }
+
+    @Test
+    void reportsUnmatchedGlobsAndKeepsGoing() {
+        String[] lines = runExpecting(1, directory.resolve("*.png").toString(), page.toString());
+
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("\"status\":\"ERROR\"") && lines[0].contains("No files match"), lines[0]);
+        assertTrue(lines[1].contains("\"status\":\"DECODED\""), lines[1]);
+    }
+
+    @Test
+    void reportsGlobsInMissingDirectoriesAndKeepsGoing() {
+        String[] lines = runExpecting(1, directory.resolve("missing").resolve("*.tif").toString(), page.toString());
+
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("\"status\":\"ERROR\"") && lines[0].contains("Cannot list files"), lines[0]);
+        assertTrue(lines[1].contains("\"status\":\"DECODED\""), lines[1]);
+    }
+
+    @Test
+    void expandsGlobs() {
+        String[] lines = runExpecting(0, directory.resolve("*.tif").toString());
+
+        assertEquals(1, lines.length);
+        assertTrue(lines[0].contains(JsonLines.quote(page.toString())), lines[0]);
+    }
+
+    @Test
+    void printsUsageOnHelp() {
+        String[] lines = runExpecting(0, "--help");
+
+        assertTrue(lines[0].startsWith("Usage:"), lines[0]);
+    }
+
+    @Test
+    void rejectsInvalidArguments() {
+        assertEquals(0, runExpecting(2).length);
+        assertEquals(0, runExpecting(2, "--unknown", page.toString()).length);
+        assertEquals(0, runExpecting(2, "--mode").length);
+        assertEquals(0, runExpecting(2, "--mode", "fastest", page.toString()).length);
+        assertEquals(0, runExpecting(2, "--timeout", "soon", page.toString()).length);
+        assertEquals(0, runExpecting(2, "--find", "0123").length);
+    }
+
+    @Test
+    void decodesFilesWithTheGivenMode() {
+        String[] lines = runExpecting(0, "--mode", "global", page.toString());
+
+        assertEquals(1, lines.length);
+        assertTrue(lines[0].contains("\"status\":\"DECODED\"") && lines[0].contains("\"tier\":\"GLOBAL\""), lines[0]);
+    }
+
+    @Test
+    void reportsMissingFilesAndKeepsGoing() {
+        String[] lines = runExpecting(1, directory.resolve("missing.tif").toString(), page.toString());
+
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("\"status\":\"ERROR\""), lines[0]);
+        assertTrue(lines[1].contains("\"status\":\"DECODED\""), lines[1]);
+    }
+
+    @Test
+    void reportsTimeouts() {
+        String[] lines = runExpecting(1, "--timeout", "0", page.toString());
+
+        assertEquals(1, lines.length);
+        assertTrue(lines[0].contains("\"status\":\"TIMED_OUT\""), lines[0]);
+    }
+
+    @Test
+    void readsATiffFromStdin() throws Exception {
+        String[] lines = runWithInput(0, Files.readAllBytes(page), "-");
+
+        assertEquals(1, lines.length);
+        assertTrue(lines[0].contains("\"source\":\"-\"") && lines[0].contains("\"status\":\"DECODED\""), lines[0]);
+    }
+
+    @Test
+    void readsBatchPathsFromStdin() {
+        String paths = page + System.lineSeparator() + System.lineSeparator() + page + System.lineSeparator();
+        String[] lines = runWithInput(0, paths.getBytes(StandardCharsets.UTF_8), "--batch");
+
+        assertEquals(2, lines.length);
+        assertTrue(lines[1].contains("\"status\":\"DECODED\""), lines[1]);
+    }
+
+    @Test
+    void findsStoredResults() {
+        Path store = directory.resolve("store");
+        String decoded = runExpecting(0, "--store", store.toString(), page.toString())[0];
+        String data = decoded.replaceAll(".*\"data\":\"([0-9]*)\".*", "$1");
+
+        String[] lines = runExpecting(0, "--store", store.toString(), "--find", data);
+        assertEquals(1, lines.length);
+        assertTrue(lines[0].contains(JsonLines.quote(page.toString())), lines[0]);
+
+        assertEquals(0, runExpecting(1, "--store", store.toString(), "--find", "0").length);
+    }
+
+    private String[] runExpecting(int exitCode, String... args) {
+        return runWithInput(exitCode, new byte[0], args);
+    }
+
+    private String[] runWithInput(int exitCode, byte[] input, String... args) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int actual = Main.run(args, new ByteArrayInputStream(input), new PrintStream(out, true, StandardCharsets.UTF_8));
+        String output = out.toString(StandardCharsets.UTF_8);
+        assertEquals(exitCode, actual, output);
+        return output.isEmpty() ? new String[0] : output.split("\\R");
+    }
+}
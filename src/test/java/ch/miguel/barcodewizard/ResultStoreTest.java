@@ -0,0 +1,274 @@
+package ch.miguel.barcodewizard;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResultStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void findsEveryOccurrenceInAppendOrder() throws Exception {
+        try (ResultStore store = ResultStore.open(directory)) {
+            store.append(result("A", "a.tif", 0));
+            store.append(result("B", "b.tif", 0));
+            store.append(new StoredResult("A", "c.tif", 2, null));
+
+            List<StoredResult> matches = store.find("A");
+            assertEquals(2, matches.size());
+            assertEquals("a.tif", matches.get(0).getSource());
+            assertEquals(new Rectangle(1, 2, 30, 40), matches.get(0).getBoundingBox());
+            assertEquals("c.tif", matches.get(1).getSource());
+            assertEquals(2, matches.get(1).getPage());
+            assertNull(matches.get(1).getBoundingBox());
+            assertTrue(store.find("C").isEmpty());
+        }
+    }
+
+    @Test
+    void reopensWithoutRebuildingTheIndex() throws Exception {
+        try (ResultStore store = ResultStore.open(directory)) {
+            for (int i = 0; i < 1000; i++) {
+                store.append(result("code" + i, "page" + i + ".tif", 0));
+            }
+        }
+        byte[] index = Files.readAllBytes(directory.resolve(ResultStore.INDEX_FILE));
+
+        try (ResultStore store = ResultStore.open(directory)) {
+            assertEquals(1000, store.size());
+            assertEquals("page567.tif", store.find("code567").get(0).getSource());
+            assertTrue(Arrays.equals(index, Files.readAllBytes(directory.resolve(ResultStore.INDEX_FILE))));
+
+            store.append(result("code567", "again.tif", 1));
+            assertEquals(2, store.find("code567").size());
+        }
+    }
+
+    @Test
+    void recoversFromATornTail() throws Exception {
+        try (ResultStore store = ResultStore.open(directory)) {
+            store.append(result("A", "a.tif", 0));
+            store.append(result("B", "b.tif", 0));
+        }
+        Path segment = directory.resolve(ResultStore.SEGMENT_FILE);
+        long intactLength = Files.size(segment);
+        appendTornRecord(segment);
+
+        try (ResultStore store = ResultStore.open(directory)) {
+            assertEquals(2, store.size());
+            assertEquals(intactLength, Files.size(segment));
+            assertEquals("b.tif", store.find("B").get(0).getSource());
+            store.append(result("C", "c.tif", 0));
+        }
+        try (ResultStore store = ResultStore.open(directory)) {
+            assertEquals(3, store.size());
+            assertEquals("c.tif", store.find("C").get(0).getSource());
+        }
+    }
+
+    @Test
+    void rebuildsAMissingIndex() throws Exception {
+        try (ResultStore store = ResultStore.open(directory)) {
+            store.append(result("A", "a.tif", 0));
+            store.append(result("B", "b.tif", 0));
+        }
+        Files.delete(directory.resolve(ResultStore.INDEX_FILE));
+
+        try (ResultStore store = ResultStore.open(directory)) {
+            assertEquals(2, store.size());
+            assertEquals("a.tif", store.find("A").get(0).getSource());
+        }
+    }
+
+    @Test
+    void rebuildsAStaleIndexInPlace() throws Exception {
+        Path segment = directory.resolve(ResultStore.SEGMENT_FILE);
+        Path indexFile = directory.resolve(ResultStore.INDEX_FILE);
+        byte[] twoRecords;
+        try (ResultStore store = ResultStore.open(directory)) {
+            store.append(result("A", "a.tif", 0));
+            store.append(result("B", "b.tif", 0));
+            twoRecords = Files.readAllBytes(segment);
+            for (int i = 0; i < 1000; i++) {
+                store.append(result("code" + i, "page" + i + ".tif", 0));
+            }
+        }
+        long grownIndexSize = Files.size(indexFile);
+        // The index is now behind the segment and needs fewer slots than its file holds
+        Files.write(segment, twoRecords);
+
+        try (ResultStore store = ResultStore.open(directory)) {
+            assertEquals(2, store.size());
+            assertEquals("b.tif", store.find("B").get(0).getSource());
+            assertTrue(store.find("code567").isEmpty());
+            assertEquals(grownIndexSize, Files.size(indexFile));
+        }
+        byte[] index = Files.readAllBytes(indexFile);
+        try (ResultStore store = ResultStore.open(directory)) {
+            assertEquals(2, store.size());
+            assertTrue(Arrays.equals(index, Files.readAllBytes(indexFile)));
+        }
+    }
+
+    @Test
+    void allowsOneWriterAtATime() throws Exception {
+        try (ResultStore store = ResultStore.open(directory)) {
+            assertThrows(IOException.class, () -> ResultStore.open(directory));
+            store.append(result("A", "a.tif", 0));
+        }
+        try (ResultStore store = ResultStore.open(directory)) {
+            assertEquals(1, store.size());
+        }
+    }
+
+    @Test
+    void readerScansTheSegmentWhileAWriterIsOpen() throws Exception {
+        try (ResultStore writer = ResultStore.open(directory)) {
+            writer.append(result("A", "a.tif", 0));
+            Path segment = directory.resolve(ResultStore.SEGMENT_FILE);
+            appendTornRecord(segment);
+            long segmentLength = Files.size(segment);
+
+            try (ResultStore reader = ResultStore.openReadOnly(directory)) {
+                assertTrue(reader.isReadOnly());
+                assertEquals(1, reader.size());
+                assertEquals("a.tif", reader.find("A").get(0).getSource());
+                assertThrows(IOException.class, () -> reader.append(result("B", "b.tif", 0)));
+            }
+            // The reader neither repaired the torn record nor touched the writer's files
+            assertEquals(segmentLength, Files.size(segment));
+        }
+    }
+
+    @Test
+    void readerSeesRecordsAppendedAfterItOpened() throws Exception {
+        try (ResultStore writer = ResultStore.open(directory);
+             ResultStore reader = ResultStore.openReadOnly(directory)) {
+            assertTrue(reader.find("A").isEmpty());
+            writer.append(result("A", "a.tif", 0));
+            assertEquals(1, reader.find("A").size());
+            assertEquals(1, reader.size());
+        }
+    }
+
+    @Test
+    void readerUsesTheIndexAndHoldsOffWriters() throws Exception {
+        try (ResultStore writer = ResultStore.open(directory)) {
+            writer.append(result("A", "a.tif", 0));
+            writer.append(result("B", "b.tif", 0));
+        }
+
+        try (ResultStore reader = ResultStore.openReadOnly(directory);
+             ResultStore secondReader = ResultStore.openReadOnly(directory)) {
+            assertEquals(2, reader.size());
+            assertEquals("b.tif", reader.find("B").get(0).getSource());
+            assertEquals("a.tif", secondReader.find("A").get(0).getSource());
+            assertThrows(IOException.class, () -> ResultStore.open(directory));
+        }
+    }
+
+    @Test
+    void readOnlyOpenRequiresAnExistingStore() {
+        assertThrows(IOException.class, () -> ResultStore.openReadOnly(directory.resolve("missing")));
+        assertFalse(Files.exists(directory.resolve("missing")));
+    }
+
+    @Test
+    void appendsAndFindsConcurrently() throws Exception {
+        int threads = 4;
+        int perThread = 300;
+        ExecutorService pool = Executors.newFixedThreadPool(threads * 2);
+        try (ResultStore store = ResultStore.open(directory)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        store.append(result("code" + thread + "-" + i, "t" + thread + ".tif", i));
+                    }
+                    return null;
+                }));
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        for (StoredResult match : store.find("code" + thread + "-" + i)) {
+                            assertEquals(i, match.getPage());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+
+            assertEquals(threads * perThread, store.size());
+            for (int t = 0; t < threads; t++) {
+                assertEquals(1, store.find("code" + t + "-" + (perThread - 1)).size());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void findsFromAnotherProcessWhileAWriterIsOpen() throws Exception {
+        try (ResultStore writer = ResultStore.open(directory)) {
+            writer.append(result("A", "a.tif", 0));
+
+            Process find = startMain("--store", directory.toString(), "--find", "A");
+            String output = new String(find.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertEquals(0, find.waitFor());
+            assertTrue(output.contains("\"source\":\"a.tif\""), output);
+
+            // A second writing process is refused instead of rebuilding the files under this one
+            Process append = startMain("--store", directory.toString(), directory.resolve("none.tif").toString());
+            append.getInputStream().readAllBytes();
+            assertEquals(2, append.waitFor());
+
+            writer.append(result("B", "b.tif", 0));
+            assertEquals(2, writer.size());
+        }
+    }
+
+    private static Process startMain(String... args) throws IOException {
+        List<String> command = new ArrayList<>(List.of(
+            Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+            "-cp", System.getProperty("java.class.path"),
+            Main.class.getName()));
+        command.addAll(List.of(args));
+        return new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+    }
+
+    private static StoredResult result(String data, String source, int page) {
+        return new StoredResult(data, source, page, new Rectangle(1, 2, 30, 40));
+    }
+
+    /**
+     * Appends a record header whose payload never made it to disk, as a crash mid-append leaves it.
+     */
+    private static void appendTornRecord(Path segment) throws IOException {
+        Files.write(segment, new byte[] {0, 0, 0, 64, 1, 2, 3, 4, 5, 6}, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,108 @@
+package ch.miguel.barcodewizard;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SyntheticPageGeneratorTest {
+
+    private static final String CONTENT = "12345678901234";
+    // 0.762 mm at 200 dpi is exactly 6 pixels per module
+    private static final double MODULE_SIZE = 0.762;
+
+    private final CustomDataMatrixExtractor extractor = new CustomDataMatrixExtractor(BinarizationMode.CASCADE);
+    private final DataMatrixDecoder decoder = new DataMatrixDecoder();
+
+    @Test
+    void generatesReproduciblePages() throws Exception {
+        SyntheticPageGenerator generator = newGenerator();
+        generator.setNoise(4);
+        generator.setClutter(10);
+
+        SyntheticPage first = generator.generate(CONTENT, new Random(7));
+        SyntheticPage second = generator.generate(CONTENT, new Random(7));
+        assertEquals(first.getBoundingBox(), second.getBoundingBox());
+        assertTrue(Arrays.equals(first.getTiff(), second.getTiff()));
+    }
+
+    @Test
+    void drawsClutterClippedAtThePageEdge() throws Exception {
+        // Frames cut off by the page edge can be thinner than their stroke
+        SyntheticPageGenerator generator = newGenerator();
+        generator.setClutter(40);
+
+        Random random = new Random(5);
+        for (int i = 0; i < 50; i++) {
+            SyntheticPage page = generator.generate(CONTENT, random);
+            assertTrue(page.getTiff().length > 0);
+        }
+    }
+
+    @Test
+    void roundTripsGrayscalePages() throws Exception {
+        SyntheticPageGenerator generator = newGenerator();
+        generator.setNoise(4);
+        generator.setBlurPasses(1);
+        generator.setClutter(10);
+
+        assertRoundTrip(generator.generate(CONTENT, new Random(1)));
+    }
+
+    @Test
+    void roundTripsRotatedPages() throws Exception {
+        SyntheticPageGenerator generator = newGenerator();
+        generator.setMaxRotation(25);
+
+        for (long seed = 1; seed <= 3; seed++) {
+            assertRoundTrip(generator.generate(CONTENT, new Random(seed)));
+        }
+    }
+
+    @Test
+    void roundTripsBilevelPagesThroughTheCcittPath() throws Exception {
+        SyntheticPageGenerator generator = newGenerator();
+        generator.setBilevel(true);
+        generator.setClutter(10);
+
+        ExtractionResult result = assertRoundTrip(generator.generate(CONTENT, new Random(2)));
+        assertEquals(DecodeTier.BILEVEL, result.getTier());
+    }
+
+    @Test
+    void adaptiveTierSamplesTheRenderedModules() throws Exception {
+        // Dark areas wider than the adaptive threshold's block come out hollow in its binary image
+        CustomDataMatrixExtractor adaptiveExtractor = new CustomDataMatrixExtractor(BinarizationMode.ADAPTIVE);
+        SyntheticPageGenerator generator = newGenerator();
+        generator.setNoise(8);
+        generator.setClutter(10);
+
+        for (long seed = 1; seed <= 5; seed++) {
+            SyntheticPage page = generator.generate(CONTENT, new Random(seed));
+            ExtractionResult result = adaptiveExtractor.extract(page.getTiff());
+            assertEquals(DecodeTier.ADAPTIVE, result.getTier(), "seed " + seed);
+            assertEquals(decoder.decodeGrid(page.getModules()), result.getData(), "seed " + seed);
+        }
+    }
+
+    private SyntheticPageGenerator newGenerator() {
+        SyntheticPageGenerator generator = new SyntheticPageGenerator();
+        generator.setModuleSize(MODULE_SIZE);
+        return generator;
+    }
+
+    private ExtractionResult assertRoundTrip(SyntheticPage page) {
+        ExtractionResult result = extractor.extract(page.getTiff());
+
+        // The decoder has no ECC200 payload decoding yet; compare with its reading of the rendered grid
+        assertEquals(decoder.decodeGrid(page.getModules()), result.getData());
+        Rectangle found = result.getRegion().getBoundingBox();
+        Rectangle expected = page.getBoundingBox();
+        assertTrue(expected.contains(found.getCenterX(), found.getCenterY()), "found " + found + ", rendered " + expected);
+        return result;
+    }
+}